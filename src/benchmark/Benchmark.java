@@ -0,0 +1,39 @@
+package benchmark;
+
+/**
+ * A path that {@link BenchmarkSuite} measures: the state is set up once for
+ * a data size, then {@link #run(int)} is called by every thread in a loop.
+ */
+public interface Benchmark {
+  /**
+   * Build the state for a data size.
+   *
+   * @param size the data size, e.g. number of orders already known
+   * @throws Exception
+   */
+  void setUp(int size) throws Exception;
+
+  /**
+   * One operation.
+   *
+   * @param thread index of the calling thread, from 0
+   * @throws Exception
+   */
+  void run(int thread) throws Exception;
+
+  /**
+   * Release the state built by {@link #setUp(int)}.
+   *
+   * @throws Exception
+   */
+  default void tearDown() throws Exception {
+  }
+
+  /**
+   * @return false if the data size makes no difference to this benchmark,
+   * in which case it runs for one size only
+   */
+  default boolean isSized() {
+    return true;
+  }
+}
@@ -0,0 +1,340 @@
+package benchmark;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import benchmark.kitchen.FindReadyOrderBenchmark;
+import benchmark.order.ArchiveLookupBenchmark;
+import benchmark.order.CodecRoundTripBenchmark;
+import benchmark.order.JournalAppendBenchmark;
+import benchmark.order.PlaceOrderPathBenchmark;
+
+/**
+ * Runs the hot paths of the order and kitchen services in-process, without
+ * RMI, at several data sizes and numbers of threads.
+ * <p>
+ * For every benchmark, size and thread count the state is set up once,
+ * then there are warmup iterations followed by measured ones, each of
+ * which lets all threads call the benchmark in a loop for a fixed time.
+ * The result is the mean throughput of the measured iterations, with the
+ * half-width of its 99.9% confidence interval as the error, as JMH reports
+ * it. Results are written as CSV, and a previous result file can be given
+ * to compare against.
+ * <p>
+ * Usage: {@code java benchmark.BenchmarkSuite [options]} with
+ * <ul>
+ *   <li>{@code --filter <text>} run the benchmarks whose name contains it</li>
+ *   <li>{@code --sizes 10,10000,1000000} data sizes</li>
+ *   <li>{@code --threads 1,4,16} thread counts</li>
+ *   <li>{@code --warmup 2} warmup iterations</li>
+ *   <li>{@code --iterations 5} measured iterations</li>
+ *   <li>{@code --millis 1000} length of an iteration</li>
+ *   <li>{@code --out <file>} also write the results to the file</li>
+ *   <li>{@code --compare <file>} compare with the results in the file</li>
+ * </ul>
+ */
+public class BenchmarkSuite {
+  static final String HEADER = "benchmark,size,threads,ops_per_sec,error," +
+          "avg_us";
+  // Student's t quantiles for a two-sided 99.9% interval, by degrees of
+  // freedom 1 to 10; more than 10 use the last
+  static final double[] T_999 = {636.62, 31.60, 12.92, 8.61, 6.87, 5.96,
+          5.41, 5.04, 4.78, 4.59};
+  static final Map<String, Supplier<Benchmark>> BENCHMARKS =
+          new LinkedHashMap<>();
+
+  static {
+    BENCHMARKS.put("order.placeOrder", PlaceOrderPathBenchmark::new);
+    BENCHMARKS.put("order.journalAppend", JournalAppendBenchmark::new);
+    BENCHMARKS.put("order.codecRoundTrip", CodecRoundTripBenchmark::new);
+    BENCHMARKS.put("order.archiveLookup", ArchiveLookupBenchmark::new);
+    BENCHMARKS.put("kitchen.findReadyOrder", FindReadyOrderBenchmark::new);
+  }
+
+  private final int warmup;
+  private final int iterations;
+  private final long millis;
+
+  /**
+   * @param warmup     number of warmup iterations
+   * @param iterations number of measured iterations
+   * @param millis     length of an iteration in milliseconds
+   */
+  public BenchmarkSuite(int warmup, int iterations, long millis) {
+    this.warmup = warmup;
+    this.iterations = iterations;
+    this.millis = millis;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new HashMap<>();
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      if (!args[i].startsWith("--")) {
+        throw new IllegalArgumentException("Unknown argument " + args[i]);
+      }
+      options.put(args[i].substring(2), args[i + 1]);
+    }
+    String filter = options.getOrDefault("filter", "");
+    int[] sizes = parseList(options.getOrDefault("sizes", "10,10000,1000000"));
+    int[] threads = parseList(options.getOrDefault("threads", "1,4,16"));
+    BenchmarkSuite suite = new BenchmarkSuite(
+            Integer.parseInt(options.getOrDefault("warmup", "2")),
+            Integer.parseInt(options.getOrDefault("iterations", "5")),
+            Long.parseLong(options.getOrDefault("millis", "1000")));
+    // logging every order would be all we measure
+    Logger.getLogger("").setLevel(Level.SEVERE);
+    List<Result> results = new ArrayList<>();
+    System.out.println(HEADER);
+    for (Map.Entry<String, Supplier<Benchmark>> entry :
+            BENCHMARKS.entrySet()) {
+      if (!entry.getKey().contains(filter)) {
+        continue;
+      }
+      boolean sized = entry.getValue().get().isSized();
+      for (int size : sized ? sizes : new int[]{0}) {
+        for (int threadCount : threads) {
+          Result result = suite.run(entry.getKey(), entry.getValue().get(),
+                  size, threadCount);
+          System.out.println(result);
+          results.add(result);
+        }
+      }
+    }
+    if (options.containsKey("out")) {
+      try (PrintStream out = new PrintStream(options.get("out"))) {
+        out.println(HEADER);
+        for (Result result : results) {
+          out.println(result);
+        }
+      }
+    }
+    if (options.containsKey("compare")) {
+      compare(readResults(options.get("compare")), results, System.out);
+    }
+    System.exit(0);  // exported services keep the JVM alive
+  }
+
+  static int[] parseList(String list) {
+    String[] values = list.split(",");
+    int[] result = new int[values.length];
+    for (int i = 0; i < values.length; i++) {
+      result[i] = Integer.parseInt(values[i].trim());
+    }
+    return result;
+  }
+
+  /**
+   * Measure a benchmark for a size and thread count.
+   *
+   * @param name        name of the benchmark
+   * @param benchmark   the benchmark, not yet set up
+   * @param size        the data size
+   * @param threadCount number of threads calling it
+   * @return the result
+   * @throws Exception if the benchmark failed
+   */
+  public Result run(String name, Benchmark benchmark, int size,
+                    int threadCount) throws Exception {
+    benchmark.setUp(size);
+    try {
+      for (int i = 0; i < warmup; i++) {
+        iteration(benchmark, threadCount);
+      }
+      double[] throughput = new double[iterations];
+      for (int i = 0; i < iterations; i++) {
+        throughput[i] = iteration(benchmark, threadCount);
+      }
+      return new Result(name, size, threadCount, throughput);
+    } finally {
+      benchmark.tearDown();
+    }
+  }
+
+  /**
+   * Let the threads call the benchmark for the length of an iteration.
+   *
+   * @return operations per second
+   */
+  private double iteration(Benchmark benchmark, int threadCount)
+          throws Exception {
+    LongAdder operations = new LongAdder();
+    CountDownLatch start = new CountDownLatch(1);
+    Exception[] failure = new Exception[1];
+    long[] window = new long[2];
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < threadCount; t++) {
+      int thread = t;
+      threads.add(new Thread(() -> {
+        try {
+          start.await();
+          long deadline = window[1];
+          long count = 0;
+          while (System.nanoTime() < deadline) {
+            benchmark.run(thread);
+            count++;
+          }
+          operations.add(count);
+        } catch (Exception e) {
+          synchronized (failure) {
+            failure[0] = e;
+          }
+        }
+      }, "benchmark-" + t));
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    window[0] = System.nanoTime();
+    window[1] = window[0] + millis * 1_000_000L;
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    synchronized (failure) {
+      if (failure[0] != null) {
+        throw failure[0];
+      }
+    }
+    // the last operation of every thread may run past the deadline
+    long elapsed = Math.max(System.nanoTime() - window[0], 1);
+    return operations.sum() * 1e9 / elapsed;
+  }
+
+  /**
+   * Read the results of an earlier run.
+   *
+   * @param file CSV file written with {@code --out}
+   * @return the results
+   * @throws IOException
+   */
+  static List<Result> readResults(String file) throws IOException {
+    List<Result> results = new ArrayList<>();
+    try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isBlank() || line.startsWith("benchmark,")) {
+          continue;
+        }
+        results.add(Result.parse(line));
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Print the change of every result against the earlier result for the
+   * same benchmark, size and thread count. A change within the errors of
+   * both is marked as noise.
+   */
+  static void compare(List<Result> baseline, List<Result> results,
+                      PrintStream out) {
+    Map<String, Result> byKey = new HashMap<>();
+    for (Result result : baseline) {
+      byKey.put(result.key(), result);
+    }
+    out.println();
+    out.println("benchmark,size,threads,baseline_ops_per_sec,ops_per_sec," +
+            "change_pct,verdict");
+    for (Result result : results) {
+      Result base = byKey.get(result.key());
+      if (base == null) {
+        continue;
+      }
+      double change = (result.opsPerSec - base.opsPerSec) / base.opsPerSec *
+              100;
+      String verdict;
+      if (Math.abs(result.opsPerSec - base.opsPerSec) <=
+              result.error + base.error) {
+        verdict = "noise";
+      } else {
+        verdict = change > 0 ? "faster" : "slower";
+      }
+      out.printf("%s,%d,%d,%.1f,%.1f,%+.1f,%s%n", result.name, result.size,
+              result.threads, base.opsPerSec, result.opsPerSec, change,
+              verdict);
+    }
+  }
+
+  /**
+   * Throughput of a benchmark for a size and thread count.
+   */
+  public static class Result {
+    final String name;
+    final int size;
+    final int threads;
+    final double opsPerSec;
+    final double error;
+
+    Result(String name, int size, int threads, double opsPerSec,
+           double error) {
+      this.name = name;
+      this.size = size;
+      this.threads = threads;
+      this.opsPerSec = opsPerSec;
+      this.error = error;
+    }
+
+    Result(String name, int size, int threads, double[] throughput) {
+      this(name, size, threads, mean(throughput), error(throughput));
+    }
+
+    static double mean(double[] values) {
+      double sum = 0;
+      for (double value : values) {
+        sum += value;
+      }
+      return sum / values.length;
+    }
+
+    static double error(double[] values) {
+      int n = values.length;
+      if (n < 2) {
+        return Double.NaN;
+      }
+      double mean = mean(values);
+      double squares = 0;
+      for (double value : values) {
+        squares += (value - mean) * (value - mean);
+      }
+      double stddev = Math.sqrt(squares / (n - 1));
+      return T_999[Math.min(n - 1, T_999.length) - 1] * stddev / Math.sqrt(n);
+    }
+
+    static Result parse(String line) {
+      String[] fields = line.split(",");
+      return new Result(fields[0], Integer.parseInt(fields[1]),
+              Integer.parseInt(fields[2]), Double.parseDouble(fields[3]),
+              Double.parseDouble(fields[4]));
+    }
+
+    String key() {
+      return name + "," + size + "," + threads;
+    }
+
+    /**
+     * @return average time of an operation in microseconds, which is what
+     * each thread waits for it
+     */
+    public double getAverageMicros() {
+      return opsPerSec == 0 ? 0 : threads * 1e6 / opsPerSec;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s,%d,%d,%.1f,%.1f,%.2f", name, size, threads,
+              opsPerSec, error, getAverageMicros());
+    }
+  }
+}
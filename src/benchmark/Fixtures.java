@@ -0,0 +1,79 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+
+import server.order.OrderInstance;
+
+import static shared.Constants.ITEM_NAMES;
+
+/**
+ * State shared by the benchmarks.
+ */
+public final class Fixtures {
+  private Fixtures() {
+  }
+
+  /**
+   * @param i index of the order
+   * @return an order of one or two items, spread over the menu
+   */
+  public static OrderInstance order(int i) {
+    HashMap<String, Integer> items = new HashMap<>();
+    items.put(ITEM_NAMES.get(i % ITEM_NAMES.size()), 1 + i % 3);
+    if (i % 2 == 0) {
+      items.put(ITEM_NAMES.get((i + 1) % ITEM_NAMES.size()), 1);
+    }
+    return new OrderInstance(10 + i % 50, "client-" + i % 100, i, items);
+  }
+
+  /**
+   * @param count number of orders
+   * @return that many orders
+   */
+  public static List<OrderInstance> orders(int count) {
+    List<OrderInstance> orders = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      orders.add(order(i));
+    }
+    return orders;
+  }
+
+  /**
+   * @return a new, empty archive directory, as the path prefix the
+   * services expect
+   * @throws IOException
+   */
+  public static String archiveDir() throws IOException {
+    return Files.createTempDirectory("order-archive").toFile().getPath() +
+            File.separator;
+  }
+
+  /**
+   * @return today as the journal names its files
+   */
+  public static String today() {
+    return new SimpleDateFormat("yyyyMMdd").format(new Date());
+  }
+
+  /**
+   * Delete a directory and everything in it.
+   *
+   * @param dir the directory
+   */
+  public static void delete(String dir) {
+    File[] files = new File(dir).listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    new File(dir).delete();
+  }
+}
@@ -0,0 +1,44 @@
+package benchmark.kitchen;
+
+import java.rmi.server.UnicastRemoteObject;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import benchmark.Benchmark;
+import benchmark.Fixtures;
+import server.kitchen.KitchenServiceImpl;
+import server.order.OrderInstance;
+
+/**
+ * {@code KitchenServiceImpl.findReadyOrder} as a delivery agent calls it.
+ * So that there always is a ready order to find, every operation first
+ * hands the kitchen a new order and marks it ready, and delivers the one
+ * it found. The size is the number of orders the kitchen is already
+ * tracking.
+ */
+public class FindReadyOrderBenchmark implements Benchmark {
+  private KitchenServiceImpl kitchenService;
+  private AtomicInteger next;
+
+  @Override
+  public void setUp(int size) throws Exception {
+    kitchenService = new KitchenServiceImpl();
+    kitchenService.processOrders(Fixtures.orders(size));
+    next = new AtomicInteger(size);
+  }
+
+  @Override
+  public void run(int thread) throws Exception {
+    OrderInstance order = Fixtures.order(next.getAndIncrement());
+    kitchenService.processOrder(order);
+    kitchenService.orderReady(order.getOrderID());
+    String found = kitchenService.findReadyOrder();
+    if (found != null) {
+      kitchenService.markDelivered(found);
+    }
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    UnicastRemoteObject.unexportObject(kitchenService, true);
+  }
+}
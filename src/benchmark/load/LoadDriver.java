@@ -0,0 +1,478 @@
+package benchmark.load;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.rmi.registry.LocateRegistry;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import client.user.ClientRuntime;
+import server.kitchen.KitchenService;
+import server.order.OrderInstance;
+import server.order.OrderStatus;
+import shared.metrics.LatencyHistogram;
+
+import static shared.Constants.FAILURE_MESSAGE;
+import static shared.Constants.ITEM_NAMES;
+import static shared.Constants.KITCHEN_HOST;
+import static shared.Constants.KITCHEN_NAME;
+import static shared.Constants.KITCHEN_PORT;
+
+/**
+ * Puts load on the whole RMI topology: starts the services on localhost
+ * (see {@link Topology}), then simulates users placing and checking
+ * orders, chefs preparing them and delivery agents delivering them, and
+ * reports the throughput, the latency percentiles of every remote method
+ * and the latency of an order from placing it until the user sees it
+ * delivered.
+ * <p>
+ * A user session places an order, checks its status once and then watches
+ * it with {@code awaitOrderStatus} until it is delivered, just like the
+ * User client. Sessions arrive either in a closed loop, where a fixed
+ * number of users each start a new session once their last one ended, or
+ * in an open loop, where sessions start at a fixed average rate (Poisson
+ * arrivals) whether or not earlier ones finished. In the open loop the
+ * end-to-end latency is measured from when a session was due to start, so
+ * a backlog shows up in it instead of being hidden.
+ * <p>
+ * The long polls ({@code awaitOrderStatus}, {@code awaitPlacedOrders},
+ * {@code claimReadyOrder}) are reported like the other methods, but their
+ * latency includes waiting for something to happen.
+ * <p>
+ * Usage: {@code java benchmark.load.LoadDriver [options]} with
+ * <ul>
+ *   <li>{@code --users 100} concurrent users of the closed loop</li>
+ *   <li>{@code --rate <sessions per second>} use the open loop instead</li>
+ *   <li>{@code --max-sessions 10000} open sessions at most in the open
+ *   loop, any more are dropped and counted</li>
+ *   <li>{@code --think-millis 0} pause between the sessions of a user</li>
+ *   <li>{@code --seconds 60} length of the run, without the warmup</li>
+ *   <li>{@code --warmup-seconds 10} time before anything is recorded</li>
+ *   <li>{@code --chefs 4}, {@code --agents 4} number of chefs and delivery
+ *   agents</li>
+ *   <li>{@code --prep-millis 0}, {@code --delivery-millis 0} time a chef
+ *   takes per order, and a delivery agent per delivery</li>
+ *   <li>{@code --port 5000} port of the primary OrderService</li>
+ *   <li>{@code --secondaries 1} number of secondary OrderServices</li>
+ *   <li>{@code --start true} start the services, false to use running
+ *   ones</li>
+ *   <li>{@code --server-log-level <level>} log level of the services</li>
+ *   <li>{@code --stock 10000000} quantity of every item added to the
+ *   kitchen</li>
+ *   <li>{@code --finance-latency-millis 0} time a call of the FinanceService
+ *   takes</li>
+ * </ul>
+ */
+public class LoadDriver {
+  static final long CALL_TIMEOUT_MILLIS = 5000;
+  static final long STATUS_WAIT_MILLIS = 30000;
+  // how long placing an order is tried while no OrderService responds
+  static final long ORDER_RETRY_MILLIS = 30000;
+  // time after which a session stops watching an order that is not
+  // delivered
+  static final long ORDER_TIMEOUT_MILLIS = 120000;
+  // time the sessions still running at the end are given to finish
+  static final long DRAIN_MILLIS = 30000;
+  static final int MAX_ORDERS_PER_FETCH = 100;
+  static final long KITCHEN_WAIT_MILLIS = 1000;
+  static final long PROGRESS_MILLIS = 5000;
+  static final String END_TO_END = "order.endToEnd";
+  private final Map<String, String> options;
+  private final Map<String, LatencyHistogram> latencies;
+  private final Map<String, LongAdder> errors;
+  private final LongAdder sessions;
+  private final LongAdder placed;
+  private final LongAdder rejected;
+  private final LongAdder delivered;
+  private final LongAdder undelivered;
+  private final LongAdder dropped;
+  private final AtomicInteger open;
+  private final AtomicInteger users;
+  private ClientRuntime runtime;
+  private KitchenService kitchenService;
+  private volatile boolean running;
+  private volatile long measureFrom;
+
+  LoadDriver(Map<String, String> options) {
+    this.options = options;
+    this.latencies = new ConcurrentHashMap<>();
+    this.errors = new ConcurrentHashMap<>();
+    this.sessions = new LongAdder();
+    this.placed = new LongAdder();
+    this.rejected = new LongAdder();
+    this.delivered = new LongAdder();
+    this.undelivered = new LongAdder();
+    this.dropped = new LongAdder();
+    this.open = new AtomicInteger();
+    this.users = new AtomicInteger();
+  }
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new HashMap<>();
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      if (!args[i].startsWith("--")) {
+        throw new IllegalArgumentException("Unknown argument " + args[i]);
+      }
+      options.put(args[i].substring(2), args[i + 1]);
+    }
+    // the clients log every failed-over call, which is not what we measure
+    Logger.getLogger("").setLevel(Level.SEVERE);
+    new LoadDriver(options).run();
+    System.exit(0);
+  }
+
+  private int intOption(String name, int defaultValue) {
+    return options.containsKey(name) ? Integer.parseInt(options.get(name)) :
+            defaultValue;
+  }
+
+  private void run() throws Exception {
+    int port = intOption("port", 5000);
+    int secondaries = intOption("secondaries", 1);
+    File runDir = Files.createTempDirectory("load").toFile();
+    Topology topology = new Topology(runDir,
+            options.get("server-log-level"),
+            intOption("finance-latency-millis", 0));
+    if (Boolean.parseBoolean(options.getOrDefault("start", "true"))) {
+      System.out.println("# starting the services, logs in " + runDir);
+      topology.start(port, secondaries);
+    }
+    try {
+      connect(port, topology.writeSecondariesFile(port, secondaries));
+      drive();
+    } finally {
+      topology.stop();
+    }
+  }
+
+  private void connect(int port, File secondariesFile) throws Exception {
+    kitchenService = (KitchenService) LocateRegistry.getRegistry(
+            KITCHEN_HOST, KITCHEN_PORT).lookup(KITCHEN_NAME);
+    int stock = intOption("stock", 10_000_000);
+    for (String item : ITEM_NAMES) {
+      kitchenService.addItem(item, stock);
+    }
+    runtime = new ClientRuntime(Topology.HOST, port,
+            secondariesFile.getPath());
+    if (!runtime.connect()) {
+      throw new IllegalStateException("No OrderService could be reached.");
+    }
+  }
+
+  private void drive() throws Exception {
+    long warmupMillis = TimeUnit.SECONDS.toMillis(
+            intOption("warmup-seconds", 10));
+    long measureMillis = TimeUnit.SECONDS.toMillis(intOption("seconds", 60));
+    running = true;
+    List<Thread> workers = new ArrayList<>();
+    for (int i = 0; i < intOption("chefs", 4); i++) {
+      workers.add(start("chef-" + i, this::cook));
+    }
+    for (int i = 0; i < intOption("agents", 4); i++) {
+      workers.add(start("delivery-agent-" + i, this::deliver));
+    }
+    long start = System.currentTimeMillis();
+    long end = start + warmupMillis + measureMillis;
+    Thread progress = start("progress", () -> reportProgress(start, end));
+    Thread load = options.containsKey("rate") ?
+            start("arrivals", () -> arrive(end)) :
+            start("users", () -> closedLoop(end));
+    TimeUnit.MILLISECONDS.sleep(warmupMillis);
+    reset();
+    load.join();
+    long measured = System.currentTimeMillis() - measureFrom;
+    // let the sessions still open see their orders delivered
+    long drainDeadline = System.currentTimeMillis() + DRAIN_MILLIS;
+    while ((open.get() > 0 || users.get() > 0) &&
+            System.currentTimeMillis() < drainDeadline) {
+      TimeUnit.MILLISECONDS.sleep(100);
+    }
+    running = false;
+    progress.interrupt();
+    for (Thread worker : workers) {
+      worker.join(KITCHEN_WAIT_MILLIS * 2);
+    }
+    report(measured);
+  }
+
+  private static Thread start(String name, Runnable runnable) {
+    Thread thread = new Thread(runnable, name);
+    thread.setDaemon(true);
+    thread.start();
+    return thread;
+  }
+
+  /**
+   * Forget what was recorded during the warmup.
+   */
+  private void reset() {
+    for (LatencyHistogram histogram : latencies.values()) {
+      histogram.reset();
+    }
+    for (LongAdder count : errors.values()) {
+      count.reset();
+    }
+    for (LongAdder count : new LongAdder[]{sessions, placed, rejected,
+            delivered, undelivered, dropped}) {
+      count.reset();
+    }
+    measureFrom = System.currentTimeMillis();
+  }
+
+  /**
+   * Closed loop: every user starts a new session as soon as the last one
+   * ended.
+   */
+  private void closedLoop(long end) {
+    int userCount = intOption("users", 100);
+    long thinkMillis = intOption("think-millis", 0);
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < userCount; i++) {
+      users.incrementAndGet();
+      threads.add(start("user-" + i, () -> {
+        try {
+          while (System.currentTimeMillis() < end) {
+            session(System.nanoTime());
+            TimeUnit.MILLISECONDS.sleep(thinkMillis);
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } finally {
+          users.decrementAndGet();
+        }
+      }));
+    }
+    for (Thread thread : threads) {
+      try {
+        // users finishing their last session are waited for by the drain
+        thread.join(Math.max(end - System.currentTimeMillis(), 1));
+      } catch (InterruptedException e) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Open loop: sessions start at exponentially distributed intervals,
+   * whether or not the earlier ones have finished.
+   */
+  private void arrive(long end) {
+    double rate = Double.parseDouble(options.get("rate"));
+    int maxSessions = intOption("max-sessions", 10000);
+    ExecutorService executor = Executors.newCachedThreadPool(r -> {
+      Thread thread = new Thread(r, "user-session");
+      thread.setDaemon(true);
+      return thread;
+    });
+    long endNanos = System.nanoTime() +
+            TimeUnit.MILLISECONDS.toNanos(end - System.currentTimeMillis());
+    long next = System.nanoTime();
+    while (next < endNanos) {
+      double gap = -Math.log(1 - ThreadLocalRandom.current().nextDouble()) /
+              rate;
+      next += (long) (gap * 1e9);
+      long wait = next - System.nanoTime();
+      if (wait > 0) {
+        try {
+          TimeUnit.NANOSECONDS.sleep(wait);
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+      if (open.get() >= maxSessions) {
+        dropped.increment();
+        continue;
+      }
+      open.incrementAndGet();
+      long due = next;
+      executor.execute(() -> {
+        try {
+          session(due);
+        } finally {
+          open.decrementAndGet();
+        }
+      });
+    }
+    executor.shutdown();
+  }
+
+  /**
+   * A user places an order and watches it until it is delivered.
+   *
+   * @param due when the session was meant to start, from nanoTime
+   */
+  private void session(long due) {
+    sessions.increment();
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    HashMap<String, Integer> items = new HashMap<>();
+    items.put(ITEM_NAMES.get(random.nextInt(ITEM_NAMES.size())),
+            1 + random.nextInt(2));
+    if (random.nextBoolean()) {
+      items.put(ITEM_NAMES.get(random.nextInt(ITEM_NAMES.size())), 1);
+    }
+    String name = "load-user-" + random.nextInt(100000);
+    long contact = random.nextLong(1_000_000_000L, 10_000_000_000L);
+    String requestID = UUID.randomUUID().toString();
+    String orderID = call("OrderService.placeOrder", () ->
+            runtime.callIdempotent(orderService -> orderService.placeOrder(
+                    requestID, name, contact, items), CALL_TIMEOUT_MILLIS,
+                    ORDER_RETRY_MILLIS));
+    if (orderID == null || orderID.equals(FAILURE_MESSAGE)) {
+      rejected.increment();
+      return;
+    }
+    placed.increment();
+    OrderStatus status = call("OrderService.getOrderStatus", () ->
+            runtime.call(orderService -> orderService.getOrderStatus(orderID),
+                    CALL_TIMEOUT_MILLIS));
+    long deadline = System.currentTimeMillis() + ORDER_TIMEOUT_MILLIS;
+    while (status != OrderStatus.COMPLETE && status != OrderStatus.INVALID &&
+            status != OrderStatus.PAYMENT_FAILED &&
+            System.currentTimeMillis() < deadline) {
+      OrderStatus known = status;
+      OrderStatus update = call("OrderService.awaitOrderStatus", () ->
+              runtime.call(orderService -> orderService.awaitOrderStatus(
+                      orderID, known, STATUS_WAIT_MILLIS),
+                      STATUS_WAIT_MILLIS + CALL_TIMEOUT_MILLIS));
+      if (update != null) {
+        status = update;
+      }
+    }
+    if (status == OrderStatus.COMPLETE) {
+      delivered.increment();
+      histogram(END_TO_END).record(System.nanoTime() - due);
+    } else {
+      undelivered.increment();
+    }
+  }
+
+  /**
+   * A chef prepares whatever has been placed.
+   */
+  private void cook() {
+    long prepMillis = intOption("prep-millis", 0);
+    while (running) {
+      List<OrderInstance> orders = call("KitchenService.awaitPlacedOrders",
+              () -> kitchenService.awaitPlacedOrders(MAX_ORDERS_PER_FETCH,
+                      KITCHEN_WAIT_MILLIS));
+      if (orders == null) {
+        continue;
+      }
+      for (OrderInstance order : orders) {
+        pause(prepMillis);
+        call("KitchenService.orderReady",
+                () -> kitchenService.orderReady(order.getOrderID()));
+      }
+    }
+  }
+
+  /**
+   * A delivery agent delivers whatever is ready.
+   */
+  private void deliver() {
+    long deliveryMillis = intOption("delivery-millis", 0);
+    while (running) {
+      String orderID = call("KitchenService.claimReadyOrder",
+              () -> kitchenService.claimReadyOrder(KITCHEN_WAIT_MILLIS));
+      if (orderID == null) {
+        continue;
+      }
+      pause(deliveryMillis);
+      call("KitchenService.markDelivered",
+              () -> kitchenService.markDelivered(orderID));
+    }
+  }
+
+  private static void pause(long millis) {
+    if (millis > 0) {
+      try {
+        TimeUnit.MILLISECONDS.sleep(millis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private LatencyHistogram histogram(String name) {
+    return latencies.computeIfAbsent(name, key -> new LatencyHistogram());
+  }
+
+  /**
+   * Make a call and record its latency.
+   *
+   * @return the result, null if the call failed
+   */
+  private <T> T call(String method, Callable<T> call) {
+    long start = System.nanoTime();
+    try {
+      return call.call();
+    } catch (Exception e) {
+      errors.computeIfAbsent(method, key -> new LongAdder()).increment();
+      return null;
+    } finally {
+      histogram(method).record(System.nanoTime() - start);
+    }
+  }
+
+  private void reportProgress(long start, long end) {
+    long lastPlaced = 0;
+    long lastDelivered = 0;
+    while (System.currentTimeMillis() < end) {
+      try {
+        TimeUnit.MILLISECONDS.sleep(PROGRESS_MILLIS);
+      } catch (InterruptedException e) {
+        return;
+      }
+      // the counts restart at the end of the warmup
+      long nowPlaced = placed.sum();
+      long nowDelivered = delivered.sum();
+      System.out.printf("# %ds: placed %.1f/s, delivered %.1f/s, " +
+                      "open sessions %d%n",
+              (System.currentTimeMillis() - start) / 1000,
+              Math.max(nowPlaced - lastPlaced, 0) * 1000.0 / PROGRESS_MILLIS,
+              Math.max(nowDelivered - lastDelivered, 0) * 1000.0 /
+                      PROGRESS_MILLIS, open.get() + users.get());
+      lastPlaced = nowPlaced;
+      lastDelivered = nowDelivered;
+    }
+  }
+
+  private void report(long measuredMillis) {
+    double seconds = measuredMillis / 1000.0;
+    System.out.println("method,count,per_sec,errors,mean_ms,p50_ms,p90_ms," +
+            "p99_ms,p999_ms,max_ms");
+    for (Map.Entry<String, LatencyHistogram> entry :
+            new TreeMap<>(latencies).entrySet()) {
+      LatencyHistogram histogram = entry.getValue();
+      LongAdder failed = errors.get(entry.getKey());
+      System.out.printf("%s,%d,%.1f,%d,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f%n",
+              entry.getKey(), histogram.getCount(),
+              histogram.getCount() / seconds,
+              failed == null ? 0 : failed.sum(),
+              histogram.getMeanMillis(),
+              histogram.getPercentileMillis(50),
+              histogram.getPercentileMillis(90),
+              histogram.getPercentileMillis(99),
+              histogram.getPercentileMillis(99.9),
+              histogram.getMaxMillis());
+    }
+    System.out.printf("sessions,%d%nplaced,%d%nrejected,%d%ndelivered,%d%n" +
+                    "undelivered,%d%ndropped,%d%nmeasured_seconds,%.1f%n",
+            sessions.sum(), placed.sum(), rejected.sum(), delivered.sum(),
+            undelivered.sum(), dropped.sum(), seconds);
+  }
+}
@@ -0,0 +1,192 @@
+package benchmark.load;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.rmi.registry.LocateRegistry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static shared.Constants.KITCHEN_NAME;
+import static shared.Constants.KITCHEN_PORT;
+import static shared.Constants.ORDER_SERVICE_NAME;
+
+/**
+ * The FinanceService, the KitchenService and the primary and secondary
+ * OrderServices, each running in a JVM of its own on localhost, the way
+ * they are deployed. Every OrderService gets an archive directory of its
+ * own under the run directory, and the output of every process goes to a
+ * log file there.
+ */
+public class Topology {
+  static final String HOST = "localhost";
+  // FinanceApp does not take a port
+  static final int FINANCE_PORT = 4333;
+  static final String FINANCE_NAME = "FinanceService";
+  static final long START_TIMEOUT_MILLIS = 60000;
+  private final File runDir;
+  private final String logLevel;
+  private final long financeLatencyMillis;
+  private final List<Process> processes;
+
+  /**
+   * @param runDir               directory for the archives and logs of this
+   *                             run
+   * @param logLevel             log level of the services, null to keep
+   *                             their own
+   * @param financeLatencyMillis how long a call of the FinanceService takes
+   */
+  public Topology(File runDir, String logLevel, long financeLatencyMillis) {
+    this.runDir = runDir;
+    this.logLevel = logLevel;
+    this.financeLatencyMillis = financeLatencyMillis;
+    this.processes = new ArrayList<>();
+  }
+
+  /**
+   * Start all services and wait until each one is bound.
+   *
+   * @param primaryPort port of the primary OrderService, the secondaries
+   *                    take the ports after it
+   * @param secondaries number of secondary OrderServices
+   * @throws IOException          if a service could not be started
+   * @throws InterruptedException
+   */
+  public void start(int primaryPort, int secondaries) throws IOException,
+          InterruptedException {
+    Runtime.getRuntime().addShutdownHook(new Thread(this::stop));
+    startService("finance", FINANCE_PORT, FINANCE_NAME,
+            List.of("-Dfinance.latency.millis=" + financeLatencyMillis),
+            "third_party.FinanceApp");
+    startService("kitchen", KITCHEN_PORT, KITCHEN_NAME, List.of(),
+            "server.kitchen.KitchenApp");
+    startService("order-primary", primaryPort, ORDER_SERVICE_NAME, List.of(),
+            "server.order.OrderApp", String.valueOf(primaryPort));
+    for (int i = 1; i <= secondaries; i++) {
+      startService("order-secondary-" + i, primaryPort + i,
+              ORDER_SERVICE_NAME, List.of(), "server.order.OrderApp",
+              String.valueOf(primaryPort + i), "secondary", HOST,
+              String.valueOf(primaryPort));
+    }
+  }
+
+  /**
+   * Write the properties file listing the secondaries, as the User client
+   * reads it.
+   *
+   * @return the file
+   * @throws IOException
+   */
+  public File writeSecondariesFile(int primaryPort, int secondaries)
+          throws IOException {
+    File file = new File(runDir, "secondary-order-service.properties");
+    List<String> nodes = new ArrayList<>();
+    for (int i = 1; i <= secondaries; i++) {
+      nodes.add(HOST + ":" + (primaryPort + i));
+    }
+    try (PrintStream out = new PrintStream(file)) {
+      out.println("nodes=" + String.join(",", nodes));
+    }
+    return file;
+  }
+
+  /**
+   * Start a service and wait until it is bound in its registry.
+   *
+   * @param properties system properties of its JVM, as {@code -Dkey=value}
+   * @throws IOException if it could not be started
+   * @throws InterruptedException
+   */
+  private void startService(String name, int port, String serviceName,
+                            List<String> properties, String mainClass,
+                            String... args)
+          throws IOException, InterruptedException {
+    // a service left over from an earlier run would be measured instead
+    try (ServerSocket socket = new ServerSocket(port)) {
+      socket.setReuseAddress(true);
+    } catch (IOException e) {
+      throw new IOException("Port " + port + " of " + name +
+              " is in use already.", e);
+    }
+    File archiveDir = new File(runDir, name);
+    if (!archiveDir.mkdirs() && !archiveDir.isDirectory()) {
+      throw new IOException("Could not create " + archiveDir);
+    }
+    List<String> command = new ArrayList<>();
+    command.add(System.getProperty("java.home") + File.separator + "bin" +
+            File.separator + "java");
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add("-Dorder.archive.dir=" + archiveDir.getPath() +
+            File.separator);
+    command.addAll(properties);
+    if (logLevel != null) {
+      command.add("-Djava.util.logging.config.file=" +
+              writeLoggingConfig().getPath());
+    }
+    command.add(mainClass);
+    command.addAll(Arrays.asList(args));
+    Process process = new ProcessBuilder(command)
+            .redirectErrorStream(true)
+            .redirectOutput(new File(runDir, name + ".log"))
+            .start();
+    processes.add(process);
+    awaitBound(process, port, serviceName);
+  }
+
+  private File writeLoggingConfig() throws IOException {
+    File file = new File(runDir, "logging.properties");
+    if (!file.exists()) {
+      try (PrintStream out = new PrintStream(file)) {
+        out.println("handlers=java.util.logging.ConsoleHandler");
+        out.println(".level=" + logLevel);
+        out.println("java.util.logging.ConsoleHandler.level=" + logLevel);
+      }
+    }
+    return file;
+  }
+
+  private void awaitBound(Process process, int port, String name)
+          throws IOException, InterruptedException {
+    long deadline = System.currentTimeMillis() + START_TIMEOUT_MILLIS;
+    while (true) {
+      try {
+        LocateRegistry.getRegistry(HOST, port).lookup(name);
+        return;
+      } catch (Exception e) {
+        if (!process.isAlive()) {
+          throw new IOException(name + " at port " + port + " exited, " +
+                  "see the logs in " + runDir + ".");
+        }
+        if (System.currentTimeMillis() > deadline) {
+          throw new IOException(name + " at port " + port +
+                  " did not start.", e);
+        }
+        TimeUnit.MILLISECONDS.sleep(100);
+      }
+    }
+  }
+
+  /**
+   * Stop all services that were started.
+   */
+  public synchronized void stop() {
+    for (Process process : processes) {
+      process.destroy();
+    }
+    for (Process process : processes) {
+      try {
+        if (!process.waitFor(5, TimeUnit.SECONDS)) {
+          process.destroyForcibly();
+        }
+      } catch (InterruptedException e) {
+        process.destroyForcibly();
+        Thread.currentThread().interrupt();
+      }
+    }
+    processes.clear();
+  }
+}
@@ -0,0 +1,51 @@
+package benchmark.order;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import benchmark.Benchmark;
+import benchmark.Fixtures;
+import server.order.OrderArchive;
+import server.order.OrderInstance;
+
+/**
+ * Looking up an order of a past day in the {@link OrderArchive}. The size
+ * is the number of orders of that day.
+ */
+public class ArchiveLookupBenchmark implements Benchmark {
+  private static final String DAY = "20000101";
+  // keeps the JIT from dropping the work
+  static volatile long sink;
+  private String archiveDir;
+  private OrderArchive archive;
+  private String[] orderIDs;
+
+  @Override
+  public void setUp(int size) throws Exception {
+    archiveDir = Fixtures.archiveDir();
+    List<OrderInstance> orders = Fixtures.orders(Math.max(size, 1));
+    // ids carry the day the order was placed on
+    for (int i = 0; i < orders.size(); i++) {
+      orders.get(i).setOrderID(OrderInstance.orderID(DAY, i + 1));
+    }
+    new OrderArchive(archiveDir).write(DAY, 1, orders);
+    orderIDs = new String[orders.size()];
+    for (int i = 0; i < orderIDs.length; i++) {
+      orderIDs[i] = orders.get(i).getOrderID();
+    }
+    archive = new OrderArchive(archiveDir);
+    archive.open(Fixtures.today());
+  }
+
+  @Override
+  public void run(int thread) {
+    String orderID = orderIDs[
+            ThreadLocalRandom.current().nextInt(orderIDs.length)];
+    sink = archive.find(orderID).getUserContact();
+  }
+
+  @Override
+  public void tearDown() {
+    Fixtures.delete(archiveDir);
+  }
+}
@@ -0,0 +1,40 @@
+package benchmark.order;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import benchmark.Benchmark;
+import benchmark.Fixtures;
+import server.order.OrderCodec;
+import server.order.OrderInstance;
+
+/**
+ * Encoding an order with {@link OrderCodec} and decoding it again, which
+ * every journal record, checkpoint and archived order goes through.
+ */
+public class CodecRoundTripBenchmark implements Benchmark {
+  // keeps the JIT from dropping the work
+  static volatile long sink;
+  private OrderInstance order;
+
+  @Override
+  public void setUp(int size) {
+    order = Fixtures.order(1);
+  }
+
+  @Override
+  public void run(int thread) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+    OrderCodec.encodeOrder(order, new DataOutputStream(bytes));
+    OrderInstance decoded = OrderCodec.decodeOrder(new DataInputStream(
+            new ByteArrayInputStream(bytes.toByteArray())));
+    sink = decoded.getUserContact();
+  }
+
+  @Override
+  public boolean isSized() {
+    return false;
+  }
+}
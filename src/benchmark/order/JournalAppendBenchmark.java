@@ -0,0 +1,52 @@
+package benchmark.order;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import benchmark.Benchmark;
+import benchmark.Fixtures;
+import server.order.OrderArchive;
+import server.order.OrderEvent;
+import server.order.OrderInstance;
+import server.order.OrderJournal;
+import server.order.OrderStatus;
+
+import static shared.Constants.ORDER_CHECKPOINT_INTERVAL;
+import static shared.Constants.ORDER_COMMIT_MAX_BATCH_SIZE;
+import static shared.Constants.ORDER_COMMIT_WINDOW_MICROS;
+
+/**
+ * The journal half of {@code OrderServiceImpl.saveState}: appending a
+ * status change and waiting until it is on disk. The size is the number of
+ * orders of today, which every checkpoint writes out again.
+ */
+public class JournalAppendBenchmark implements Benchmark {
+  private static final OrderStatus[] STATUSES = {OrderStatus.READY,
+          OrderStatus.ASSIGNED};
+  private String archiveDir;
+  private OrderJournal journal;
+  private List<OrderInstance> orders;
+
+  @Override
+  public void setUp(int size) throws Exception {
+    archiveDir = Fixtures.archiveDir();
+    orders = Fixtures.orders(Math.max(size, 1));
+    new OrderArchive(archiveDir).write(Fixtures.today(), 1, orders);
+    journal = new OrderJournal(archiveDir, ORDER_CHECKPOINT_INTERVAL,
+            ORDER_COMMIT_WINDOW_MICROS, ORDER_COMMIT_MAX_BATCH_SIZE);
+    journal.recover();
+  }
+
+  @Override
+  public void run(int thread) throws Exception {
+    int i = ThreadLocalRandom.current().nextInt(orders.size());
+    journal.append(OrderEvent.statusChanged(orders.get(i).getOrderID(),
+            STATUSES[thread % STATUSES.length])).get();
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    journal.close();
+    Fixtures.delete(archiveDir);
+  }
+}
@@ -0,0 +1,130 @@
+package benchmark.order;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.HashMap;
+
+import server.order.OrderCodec;
+import server.order.OrderInstance;
+import server.order.OrderStatus;
+
+import static shared.Constants.ITEM_NAMES;
+
+/**
+ * Size and encode/decode time of a single order in three forms:
+ * <ul>
+ *   <li>legacy: the default Java serialization {@code OrderInstance} used
+ *   to have, reproduced by a class with the same fields</li>
+ *   <li>java: Java serialization of {@code OrderInstance} today, i.e., the
+ *   compact form wrapped in a serialization stream, as sent over RMI</li>
+ *   <li>codec: {@link OrderCodec} alone, as written to the journal</li>
+ * </ul>
+ * Every operation is repeated for a few warmup rounds first and then
+ * measured.
+ * <p>
+ * Usage: {@code java benchmark.order.OrderCodecBenchmark [iterations]}
+ * (default 200000).
+ */
+public class OrderCodecBenchmark {
+  static final int WARMUP_ROUNDS = 2;
+  // keeps the JIT from dropping the work
+  static long sink;
+
+  public static void main(String[] args) throws Exception {
+    int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+    HashMap<String, Integer> items = new HashMap<>();
+    for (int i = 0; i < ITEM_NAMES.size(); i++) {
+      items.put(ITEM_NAMES.get(i), i);
+    }
+    String name = "Jane Doe";
+    OrderInstance order = new OrderInstance(95.0, name, 6175550100L, items);
+    LegacyOrderInstance legacy = new LegacyOrderInstance(order, name);
+    System.out.println("form,bytes,encode_ns,decode_ns");
+    report("legacy", iterations, () -> javaEncode(legacy));
+    report("java", iterations, () -> javaEncode(order));
+    report("codec", iterations, () -> codecEncode(order));
+  }
+
+  interface Encoder {
+    byte[] encode() throws Exception;
+  }
+
+  static void report(String form, int iterations, Encoder encoder)
+          throws Exception {
+    byte[] bytes = encoder.encode();
+    boolean java = !form.equals("codec");
+    long encodeNanos = 0;
+    long decodeNanos = 0;
+    for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+      long start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        sink += encoder.encode().length;
+      }
+      encodeNanos = System.nanoTime() - start;
+      start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        sink += java ? javaDecode(bytes).hashCode() :
+                codecDecode(bytes).getOrderID().length();
+      }
+      decodeNanos = System.nanoTime() - start;
+    }
+    System.out.printf("%s,%d,%.0f,%.0f%n", form, bytes.length,
+            (double) encodeNanos / iterations,
+            (double) decodeNanos / iterations);
+  }
+
+  static byte[] javaEncode(Object object) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+    try (ObjectOutputStream s = new ObjectOutputStream(bytes)) {
+      s.writeObject(object);
+    }
+    return bytes.toByteArray();
+  }
+
+  static Object javaDecode(byte[] bytes) throws IOException,
+          ClassNotFoundException {
+    try (ObjectInputStream s =
+                 new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+      return s.readObject();
+    }
+  }
+
+  static byte[] codecEncode(OrderInstance order) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+    OrderCodec.encodeOrder(order, new DataOutputStream(bytes));
+    return bytes.toByteArray();
+  }
+
+  static OrderInstance codecDecode(byte[] bytes) throws IOException {
+    return OrderCodec.decodeOrder(
+            new DataInputStream(new ByteArrayInputStream(bytes)));
+  }
+
+  /**
+   * The fields of {@code OrderInstance} with the default serialized form.
+   */
+  static class LegacyOrderInstance implements Serializable {
+    private static final long serialVersionUID = 1L;
+    String orderID;
+    OrderStatus orderStatus;
+    String name;
+    double amount;
+    HashMap<String, Integer> items;
+    long userContact;
+
+    LegacyOrderInstance(OrderInstance order, String name) {
+      this.orderID = order.getOrderID();
+      this.orderStatus = order.getOrderStatus();
+      this.name = name;
+      this.amount = order.getAmount();
+      this.items = order.getItems();
+      this.userContact = order.getUserContact();
+    }
+  }
+}
@@ -0,0 +1,91 @@
+package benchmark.order;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import server.kitchen.KitchenServiceImpl;
+import server.order.OrderServiceImpl;
+import third_party.FinanceServiceImpl;
+
+import static shared.Constants.ITEM_NAMES;
+
+/**
+ * Throughput of {@code OrderServiceImpl.placeOrder} with 1 to 32 concurrent
+ * clients. Everything runs in one process and the KitchenService and
+ * FinanceService are called directly instead of over RMI, so the numbers
+ * are those of the order placement path itself. Every client orders a
+ * different item than its neighbours, the way orders spread over the menu.
+ * <p>
+ * Usage: {@code java benchmark.order.PlaceOrderBenchmark [seconds]} where
+ * seconds is the measuring time per concurrency level (default 5).
+ */
+public class PlaceOrderBenchmark {
+  static final int[] CLIENTS = {1, 2, 4, 8, 16, 32};
+  static final int WARMUP_SECONDS = 1;
+
+  public static void main(String[] args) throws Exception {
+    int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+    // logging every order would be all we measure
+    Logger.getLogger("").setLevel(Level.WARNING);
+    File archiveDir = Files.createTempDirectory("order-archive").toFile();
+    KitchenServiceImpl kitchenService = new KitchenServiceImpl();
+    for (String item : ITEM_NAMES) {
+      kitchenService.addItem(item, Integer.MAX_VALUE / 2);
+    }
+    OrderServiceImpl orderService = new OrderServiceImpl(kitchenService,
+            new FinanceServiceImpl(), archiveDir.getPath() + File.separator);
+    System.out.println("clients,orders_per_sec,avg_latency_us");
+    for (int clients : CLIENTS) {
+      run(orderService, clients, WARMUP_SECONDS);
+      double[] result = run(orderService, clients, seconds);
+      System.out.printf("%d,%.0f,%.1f%n", clients, result[0], result[1]);
+    }
+    orderService.shutdown();
+    System.exit(0);  // the services are exported and keep the JVM alive
+  }
+
+  /**
+   * Let the given number of clients place orders for the given time.
+   *
+   * @return orders per second and the average latency in microseconds
+   */
+  static double[] run(OrderServiceImpl orderService, int clients,
+                      int seconds) throws InterruptedException {
+    LongAdder orders = new LongAdder();
+    LongAdder nanos = new LongAdder();
+    long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+    List<Thread> threads = new ArrayList<>();
+    for (int c = 0; c < clients; c++) {
+      HashMap<String, Integer> items = new HashMap<>();
+      items.put(ITEM_NAMES.get(c % ITEM_NAMES.size()), 1);
+      String name = "client-" + c;
+      Thread thread = new Thread(() -> {
+        long request = 0;
+        while (System.nanoTime() < deadline) {
+          long start = System.nanoTime();
+          try {
+            orderService.placeOrder(name + "-" + request++, name, 0L, items);
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+          nanos.add(System.nanoTime() - start);
+          orders.increment();
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    long count = Math.max(orders.sum(), 1);
+    return new double[]{(double) count / seconds,
+            nanos.sum() / 1000.0 / count};
+  }
+}
@@ -0,0 +1,67 @@
+package benchmark.order;
+
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import benchmark.Benchmark;
+import benchmark.Fixtures;
+import server.kitchen.KitchenServiceImpl;
+import server.order.OrderArchive;
+import server.order.OrderServiceImpl;
+import third_party.FinanceServiceImpl;
+
+import static shared.Constants.ITEM_NAMES;
+
+/**
+ * {@code OrderServiceImpl.placeOrder} with the KitchenService and
+ * FinanceService called directly. The size is the number of orders placed
+ * earlier today, which the OrderService recovers from its checkpoint at
+ * startup and journals on top of.
+ */
+public class PlaceOrderPathBenchmark implements Benchmark {
+  private String archiveDir;
+  private KitchenServiceImpl kitchenService;
+  private FinanceServiceImpl financeService;
+  private OrderServiceImpl orderService;
+  private List<HashMap<String, Integer>> items;
+  private final AtomicLong requests = new AtomicLong();
+
+  @Override
+  public void setUp(int size) throws Exception {
+    archiveDir = Fixtures.archiveDir();
+    new OrderArchive(archiveDir).write(Fixtures.today(), 1,
+            Fixtures.orders(size));
+    kitchenService = new KitchenServiceImpl();
+    for (String item : ITEM_NAMES) {
+      kitchenService.addItem(item, Integer.MAX_VALUE / 2);
+    }
+    financeService = new FinanceServiceImpl();
+    orderService = new OrderServiceImpl(kitchenService, financeService,
+            archiveDir);
+    // every thread orders a different item than its neighbours
+    items = new ArrayList<>();
+    for (String item : ITEM_NAMES) {
+      HashMap<String, Integer> order = new HashMap<>();
+      order.put(item, 1);
+      items.add(order);
+    }
+  }
+
+  @Override
+  public void run(int thread) throws Exception {
+    orderService.placeOrder("request-" + requests.incrementAndGet(),
+            "client-" + thread, thread, items.get(thread % items.size()));
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    // stops the journal writer and the workers before the files go
+    orderService.shutdown();
+    UnicastRemoteObject.unexportObject(kitchenService, true);
+    UnicastRemoteObject.unexportObject(financeService, true);
+    Fixtures.delete(archiveDir);
+  }
+}
@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.rmi.Naming;
 import java.rmi.RemoteException;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -24,6 +25,10 @@ import static shared.Constants.KITCHEN_PORT;
  * @author Anshul Rao <rao.ans@northeastern.edu>
  */
 public class Chef {
+  // maximum number of placed orders fetched at once
+  static final int MAX_ORDERS_PER_FETCH = 100;
+  // how long a single fetch waits for an order to be placed
+  static final long ORDER_WAIT_MILLIS = 30000;
   private final Logger logger;
   KitchenService kitchenService;
 
@@ -119,15 +124,18 @@ public class Chef {
   }
 
   /**
-   * Poll placed orders from the KitchenService's queue.
+   * Fetch placed orders from the KitchenService's queue as soon as they are
+   * placed. Each fetch waits on the server until at least one order is
+   * there and then takes all that are waiting.
    *
    * @throws RemoteException
    * @throws InterruptedException
    */
   private void pollOrders() throws RemoteException, InterruptedException {
     while (true) {
-      OrderInstance order = kitchenService.dequeuePlacedOrder();
-      if (order != null) {
+      List<OrderInstance> orders = kitchenService.awaitPlacedOrders(
+              MAX_ORDERS_PER_FETCH, ORDER_WAIT_MILLIS);
+      for (OrderInstance order : orders) {
         System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>" +
                 ">>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>");
         System.out.println("A new order has been placed!");
@@ -135,7 +143,6 @@ public class Chef {
         System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>" +
                 ">>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>");
       }
-      Thread.sleep(1000);
     }
   }
 
@@ -20,6 +20,8 @@ import static shared.Constants.KITCHEN_PORT;
  */
 public class DeliveryAgent {
   static final String DONE = "DONE";
+  // how long a single claim waits for an order to be ready
+  static final long READY_WAIT_MILLIS = 30000;
   private final Logger logger;
   KitchenService kitchenService;
 
@@ -58,11 +60,9 @@ public class DeliveryAgent {
 
   public void execute() throws IOException, InterruptedException {
     while (true) {
-      // poll for a ready order from the KitchenService
-      String orderID = this.kitchenService.findReadyOrder();
-      if (orderID == null) { // sleep for a second if no order found
-        Thread.sleep(1000);
-      } else {
+      // wait for a ready order from the KitchenService
+      String orderID = this.kitchenService.claimReadyOrder(READY_WAIT_MILLIS);
+      if (orderID != null) {
         System.out.println();
         System.out.println("*****************************************" +
                 "*****************************************");
@@ -0,0 +1,354 @@
+package client.user;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.rmi.ConnectException;
+import java.rmi.ConnectIOException;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.ServerException;
+import java.rmi.UnknownHostException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.RMISocketFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import server.order.NotPrimaryException;
+import server.order.OrderService;
+
+import static shared.Constants.ORDER_SERVICE_NAME;
+
+/**
+ * Calls the OrderService for a User client, failing over from the primary
+ * to the secondaries.
+ * <p>
+ * The endpoints are the primary followed by the secondaries listed in the
+ * properties file, which is read once. Every endpoint keeps its stub and a
+ * circuit breaker: a call that cannot connect to the OrderService opens the
+ * breaker and moves on to the next endpoint, which is skipped until
+ * {@link #OPEN_MILLIS} have passed. Only then is it tried again. If every
+ * breaker is open, all endpoints are tried anyway. A secondary that turns a
+ * call away because it still sees the primary up is only passed over, as it
+ * takes over shortly after the primary went down. Connections are made
+ * with a short connect timeout, so an unreachable host fails fast.
+ * <p>
+ * A call that reached the OrderService is never made again elsewhere, as
+ * it may have taken effect: if it fails or runs into the timeout, the
+ * caller gets the failure. Calls that may be made more than once, such as
+ * a {@code placeOrder} with its request id, which the OrderService answers
+ * with the order placed the first time, go through
+ * {@link #callIdempotent}, which makes them again until one gets a
+ * response.
+ */
+public class ClientRuntime {
+  // how long connecting to an OrderService may take
+  static final int CONNECT_TIMEOUT_MILLIS = 100;
+  // how long an endpoint is skipped after it failed
+  static final long OPEN_MILLIS = 5000;
+  // how long to wait before an idempotent call is made again
+  static final long RETRY_DELAY_MILLIS = 500;
+  private final Logger logger;
+  private final List<Endpoint> endpoints;
+  private final ExecutorService executor;
+
+  static {
+    try {
+      RMISocketFactory.setSocketFactory(new ConnectTimeoutSocketFactory());
+    } catch (IOException e) {
+      // another factory was set already, keep it
+    }
+  }
+
+  /**
+   * @param hostname          hostname of the primary OrderService
+   * @param port              port of the primary OrderService
+   * @param secondaryPropFile properties file listing the secondaries as
+   *                          {@code nodes=<host>:<port>,...}, may be missing
+   */
+  public ClientRuntime(String hostname, int port, String secondaryPropFile) {
+    this.logger = Logger.getLogger(ClientRuntime.class.getName());
+    this.endpoints = new ArrayList<>();
+    this.endpoints.add(new Endpoint(hostname, port));
+    for (String node : readSecondaries(secondaryPropFile)) {
+      String[] info = node.trim().split(":");
+      try {
+        this.endpoints.add(new Endpoint(info[0], Integer.parseInt(info[1])));
+      } catch (RuntimeException e) {
+        this.logger.log(Level.WARNING, System.currentTimeMillis() +
+                ": Ignoring malformed secondary endpoint " + node + ".");
+      }
+    }
+    this.executor = Executors.newCachedThreadPool(r -> {
+      Thread thread = new Thread(r, "order-service-call");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Read the secondary endpoints from the properties file.
+   */
+  private List<String> readSecondaries(String propFile) {
+    List<String> nodes = new ArrayList<>();
+    try (InputStream inStream = new FileInputStream(propFile)) {
+      Properties prop = new Properties();
+      prop.load(inStream);
+      String value = prop.getProperty("nodes");
+      if (value != null) {
+        for (String node : value.split(",")) {
+          if (!node.isBlank()) {
+            nodes.add(node);
+          }
+        }
+      }
+    } catch (IOException e) {
+      this.logger.log(Level.WARNING, System.currentTimeMillis() +
+              ": Could not read the secondary endpoints. Refer: " + e);
+    }
+    return nodes;
+  }
+
+  /**
+   * Look up every OrderService up front, so that failing over does not
+   * have to, and make sure at least one can be reached.
+   *
+   * @return true if one could be reached
+   */
+  public boolean connect() {
+    boolean connected = false;
+    for (Endpoint endpoint : endpoints) {
+      try {
+        endpoint.stub();
+        endpoint.succeeded();
+        connected = true;
+        this.logger.log(Level.WARNING, System.currentTimeMillis() +
+                ": Connected to the OrderService at " + endpoint + ".");
+      } catch (Exception e) {
+        endpoint.failed();
+      }
+    }
+    return connected;
+  }
+
+  /**
+   * Make a call on the first OrderService that is not known to be down,
+   * moving on to the next one if it cannot be connected to.
+   *
+   * @param call          the call to be made
+   * @param timeoutMillis time the OrderService is given to respond
+   * @param <T>           type of the response
+   * @return the response
+   * @throws IOException if no OrderService could be connected to, or the
+   *                     one that was did not respond in time or failed
+   */
+  public <T> T call(OrderServiceCall<T> call, long timeoutMillis)
+          throws IOException {
+    long now = System.currentTimeMillis();
+    List<Endpoint> candidates = new ArrayList<>();
+    for (Endpoint endpoint : endpoints) {
+      if (endpoint.isAvailable(now)) {
+        candidates.add(endpoint);
+      }
+    }
+    if (candidates.isEmpty()) {
+      candidates = endpoints;
+    }
+    Exception lastFailure = null;
+    for (Endpoint endpoint : candidates) {
+      Future<T> future = executor.submit(() -> call.call(endpoint.stub()));
+      try {
+        T result = future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        endpoint.succeeded();
+        return result;
+      } catch (TimeoutException e) {
+        future.cancel(true);
+        throw new NoResponseException("OrderService at " + endpoint +
+                " did not respond in " + timeoutMillis + "ms.", e);
+      } catch (ExecutionException e) {
+        lastFailure = (Exception) e.getCause();
+        if (isTurnedAway(lastFailure)) {
+          // the secondary takes over once it finds the primary down too
+          this.logger.log(Level.WARNING, System.currentTimeMillis() +
+                  ": OrderService at " + endpoint + " turned the call away." +
+                  " Refer: " + lastFailure);
+          continue;
+        }
+        if (!isConnectFailure(lastFailure)) {
+          if (lastFailure instanceof IOException) {
+            throw (IOException) lastFailure;
+          }
+          throw new IOException(lastFailure);
+        }
+      } catch (InterruptedException e) {
+        future.cancel(true);
+        Thread.currentThread().interrupt();
+        throw new IOException(e);
+      }
+      endpoint.failed();
+      this.logger.log(Level.WARNING, System.currentTimeMillis() +
+              ": OrderService at " + endpoint + " is down, skipping it for " +
+              OPEN_MILLIS + "ms. Refer: " + lastFailure);
+    }
+    throw new NoResponseException("No OrderService could be reached.",
+            lastFailure);
+  }
+
+  /**
+   * Make a call that may be made more than once, such as a
+   * {@code placeOrder} with its request id, again until it gets a response:
+   * after a timeout, or while no OrderService can be reached, e.g. until a
+   * secondary has taken over. A call that fails on the OrderService is not
+   * made again.
+   *
+   * @param call          the call to be made
+   * @param timeoutMillis time the OrderService is given to respond, per try
+   * @param retryMillis   how long to keep trying
+   * @param <T>           type of the response
+   * @return the response
+   * @throws IOException if no try got a response, or the call failed
+   */
+  public <T> T callIdempotent(OrderServiceCall<T> call, long timeoutMillis,
+                              long retryMillis) throws IOException {
+    long deadline = System.currentTimeMillis() + retryMillis;
+    while (true) {
+      try {
+        return call(call, timeoutMillis);
+      } catch (NoResponseException e) {
+        if (System.currentTimeMillis() + RETRY_DELAY_MILLIS > deadline) {
+          throw e;
+        }
+        this.logger.log(Level.WARNING, System.currentTimeMillis() +
+                ": Got no response, trying again in " + RETRY_DELAY_MILLIS +
+                "ms. Refer: " + e);
+        try {
+          TimeUnit.MILLISECONDS.sleep(RETRY_DELAY_MILLIS);
+        } catch (InterruptedException interrupted) {
+          Thread.currentThread().interrupt();
+          throw new IOException(interrupted);
+        }
+      }
+    }
+  }
+
+  /**
+   * @param failure what a call failed with
+   * @return true if the call failed to connect to the OrderService, so it
+   * did not reach it and can be made on another one
+   */
+  static boolean isConnectFailure(Throwable failure) {
+    return failure instanceof ConnectException ||
+            failure instanceof ConnectIOException ||
+            failure instanceof UnknownHostException ||
+            failure instanceof NotBoundException;
+  }
+
+  /**
+   * @param failure what a call failed with
+   * @return true if a secondary turned the call away because the primary
+   * is up, so nothing was done
+   */
+  static boolean isTurnedAway(Throwable failure) {
+    // RMI hands a RemoteException of the server over wrapped
+    Throwable detail = failure instanceof ServerException ?
+            ((ServerException) failure).detail : failure;
+    return detail instanceof NotPrimaryException;
+  }
+
+  /**
+   * No OrderService responded to a call, either because none could be
+   * reached or because the one reached did not respond in time.
+   */
+  static class NoResponseException extends RemoteException {
+    private static final long serialVersionUID = 1L;
+
+    NoResponseException(String message, Throwable cause) {
+      super(message, cause);
+    }
+  }
+
+  /**
+   * A call made on an OrderService.
+   *
+   * @param <T> type of the response
+   */
+  public interface OrderServiceCall<T> {
+    T call(OrderService orderService) throws Exception;
+  }
+
+  /**
+   * An OrderService endpoint along with its stub and circuit breaker.
+   */
+  static class Endpoint {
+    final String host;
+    final int port;
+    private volatile OrderService stub;
+    // time until which the endpoint is skipped, 0 if it is healthy
+    private volatile long openUntil;
+
+    Endpoint(String host, int port) {
+      this.host = host;
+      this.port = port;
+    }
+
+    OrderService stub() throws Exception {
+      OrderService current = stub;
+      if (current == null) {
+        Registry registry = LocateRegistry.getRegistry(host, port);
+        current = (OrderService) registry.lookup(ORDER_SERVICE_NAME);
+        stub = current;
+      }
+      return current;
+    }
+
+    boolean isAvailable(long now) {
+      return now >= openUntil;
+    }
+
+    void succeeded() {
+      openUntil = 0;
+    }
+
+    void failed() {
+      // look the service up again, it may have been restarted
+      stub = null;
+      openUntil = System.currentTimeMillis() + OPEN_MILLIS;
+    }
+
+    @Override
+    public String toString() {
+      return host + ":" + port;
+    }
+  }
+
+  /**
+   * The default RMI sockets, but with a connect timeout.
+   */
+  static class ConnectTimeoutSocketFactory extends RMISocketFactory {
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+      Socket socket = new Socket();
+      socket.connect(new InetSocketAddress(host, port),
+              CONNECT_TIMEOUT_MILLIS);
+      return socket;
+    }
+
+    @Override
+    public ServerSocket createServerSocket(int port) throws IOException {
+      return new ServerSocket(port);
+    }
+  }
+}
@@ -1,23 +1,12 @@
 package client.user;
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.InetAddress;
-import java.rmi.ConnectException;
 import java.rmi.NotBoundException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
 import java.util.HashMap;
-import java.util.Properties;
-import java.util.Set;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.List;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -25,7 +14,6 @@ import javax.swing.*;
 
 import client.utils.Pair;
 import client.utils.ServiceNotFoundException;
-import server.order.OrderService;
 import server.order.OrderStatus;
 
 import static client.user.UserOperation.CHECK;
@@ -34,7 +22,6 @@ import static client.user.UserOperation.VIEW;
 import static shared.Constants.FAILURE_MESSAGE;
 import static shared.Constants.ITEM_NAMES;
 import static shared.Constants.ORDER_SEC_SVC_PROP_FILE;
-import static shared.Constants.ORDER_SERVICE_NAME;
 
 /**
  * User client responsible for placing orders.
@@ -42,51 +29,31 @@ import static shared.Constants.ORDER_SERVICE_NAME;
  * @author Anshul Rao <rao.ans@northeastern.edu>
  */
 public class User {
-  final int MAX_TRIES = 2; // maximum number of tries to connect to secondary
   private final GUI gui;
   private final Logger logger;
   private final int TIMEOUT = 5;
-  OrderService orderService;
-  OrderService secondaryOrderService;
-  private String currentOrderID = null;
-  // service
+  // how long a single status watch waits on the OrderService
+  private final long STATUS_WAIT_MILLIS = 30000;
+  // how long placing an order is tried while no OrderService responds
+  private final long ORDER_RETRY_MILLIS = 30000;
+  // calls the primary OrderService or, if it is down, a secondary
+  private final ClientRuntime runtime;
+  private volatile String currentOrderID = null;
+  // an order that got no response along with its request id, sent along
+  // again if the same order is submitted again so it is placed only once
+  private List<Object> pendingOrder = null;
+  private String pendingRequestID = null;
 
   public User(String hostname, int port) throws ServiceNotFoundException,
           IOException, NotBoundException, ClassNotFoundException {
     this.logger = Logger.getLogger(User.class.getName());
-    try {
-      Registry registry = LocateRegistry.getRegistry(hostname, port);
-      // lookup the service using registry
-      this.orderService = (OrderService) registry.lookup(ORDER_SERVICE_NAME);
-      this.logger.log(Level.WARNING, System.currentTimeMillis() +
-              ": Connected to the primary service at port ");
-    } catch (Exception e) {
+    this.runtime = new ClientRuntime(hostname, port, ORDER_SEC_SVC_PROP_FILE);
+    if (!runtime.connect()) {
       this.logger.log(Level.WARNING, System.currentTimeMillis() +
-              ": Could not locate the OrderService. Exiting. " +
-              "Refer: " + e);
+              ": Could not locate the OrderService. Exiting.");
       throw new ServiceNotFoundException("Could not locate the " +
               "OrderService.");
     }
-    int trial = 1;
-    // try connecting to one of the secondary servers for backup.
-    Set<Pair<String, Integer>> alreadyChecked = null;
-    while (trial < MAX_TRIES) {
-      Pair<String, Integer> secondaryInfo =
-              findSecondarySecSvcInfo(alreadyChecked);
-      Registry backupRegistry = LocateRegistry.getRegistry(secondaryInfo.first,
-              secondaryInfo.second);
-      try {
-        this.secondaryOrderService =
-                (OrderService) backupRegistry.lookup(ORDER_SERVICE_NAME);
-        this.logger.log(Level.WARNING, System.currentTimeMillis() +
-                ": Connected to the secondary service at port " +
-                secondaryInfo.second);
-        break;
-      } catch (Exception ignored) {
-        alreadyChecked.add(Pair.of(secondaryInfo.first, secondaryInfo.second));
-        trial += 1;
-      }
-    }
     gui = new GUI(this);
   }
 
@@ -122,36 +89,19 @@ public class User {
     new User(hostname, port);
   }
 
-  /**
-   * Find a secondary server IP address and port, connection to which has
-   * not been tried yet.
-   */
-  private Pair<String, Integer> findSecondarySecSvcInfo(Set<Pair<String,
-          Integer>> alreadyChecked) throws IOException {
-    InputStream inStream = new FileInputStream(ORDER_SEC_SVC_PROP_FILE);
-    Properties prop = new Properties();
-    prop.load(inStream);
-    String[] nodes = prop.getProperty("nodes").split(",");
-    for (String node : nodes) {
-      String[] info = node.split(":");
-      String ip = info[0];  // ip address of node
-      int port = Integer.parseInt(info[1]);  // port of node
-      if (alreadyChecked == null) {
-        return Pair.of(ip, port);
-      } else if (!alreadyChecked.contains(Pair.of(ip, port))) {
-        return Pair.of(ip, port);
-      }
-    }
-    return Pair.of("", 0);
-  }
-
   /**
    * Once a response is received from the OrderService, notify the user.
    *
-   * @param response the response from the server that needs to be checked
+   * @param response the response from the server that needs to be checked,
+   *                 null if none responded
    */
   private void processResponse(String response) {
-    if (response.equals(FAILURE_MESSAGE)) {
+    if (response == null) {
+      this.logger.log(Level.WARNING, System.currentTimeMillis() + ": Order " +
+              "got no response.");
+      gui.showMessage("Oops! The server could not be reached, the order may" +
+              " not have been placed. Submit it again to find out.");
+    } else if (response.equals(FAILURE_MESSAGE)) {
       this.logger.log(Level.WARNING, System.currentTimeMillis() + ": Order " +
               "could not be placed.");
       gui.showMessage("Oops! Order could not be placed. :(");
@@ -160,9 +110,63 @@ public class User {
       this.logger.log(Level.INFO, System.currentTimeMillis() + ": Order " +
               "has been placed.");
       gui.showMessage("Order Placed! Your Order ID: " + response);
+      Thread watcher = new Thread(() -> watchOrderStatus(response),
+              "order-status-watcher");
+      watcher.setDaemon(true);
+      watcher.start();
+    }
+  }
+
+  /**
+   * Watch the status of the order placed and notify the user as soon as it
+   * changes, until the order is complete.
+   *
+   * @param orderID the order id of the order placed
+   */
+  private void watchOrderStatus(String orderID) {
+    OrderStatus known = OrderStatus.PAYMENT_PENDING;
+    while (orderID.equals(currentOrderID)) {
+      OrderStatus orderStatus;
+      try {
+        orderStatus = awaitOrderStatus(orderID, known);
+      } catch (IOException e) {
+        this.logger.log(Level.WARNING, System.currentTimeMillis() +
+                ": Could not watch the order status. Refer: " + e);
+        orderStatus = OrderStatus.INVALID;
+      }
+      if (orderStatus == OrderStatus.INVALID) {
+        // the service does not know the order (yet), try again later
+        try {
+          TimeUnit.SECONDS.sleep(TIMEOUT);
+        } catch (InterruptedException e) {
+          return;
+        }
+        continue;
+      }
+      if (orderStatus != known) {
+        known = orderStatus;
+        String message = "Order ID: " + orderID + "\nStatus: " +
+                orderStatus.name();
+        SwingUtilities.invokeLater(() -> gui.showMessage(message));
+        if (orderStatus == OrderStatus.COMPLETE ||
+                orderStatus == OrderStatus.PAYMENT_FAILED) {
+          currentOrderID = null;
+        }
+      }
     }
   }
 
+  /**
+   * Wait on the OrderService for the status of the order to change, using
+   * the secondary if the primary cannot be reached.
+   */
+  private OrderStatus awaitOrderStatus(String orderID, OrderStatus known)
+          throws IOException {
+    return runtime.call(orderService -> orderService.awaitOrderStatus(
+                    orderID, known, STATUS_WAIT_MILLIS),
+            STATUS_WAIT_MILLIS + TimeUnit.SECONDS.toMillis(TIMEOUT));
+  }
+
   /**
    * Get the latest menu from OrderService (with the current count of items).
    *
@@ -223,7 +227,18 @@ public class User {
       gui.showMessage("Please enter valid item counts!");
       return;
     }
-    String response = (String) getResponse(ORDER, name, contact, itemsNeeded);
+    // the same request id for the same order, until it got a response
+    List<Object> order = List.of(name, contact, itemsNeeded);
+    if (!order.equals(pendingOrder)) {
+      pendingOrder = order;
+      pendingRequestID = UUID.randomUUID().toString();
+    }
+    String response = (String) getResponse(ORDER, pendingRequestID, name,
+            contact, itemsNeeded);
+    if (response != null) {
+      pendingOrder = null;
+      pendingRequestID = null;
+    }
     processResponse(response);
   }
 
@@ -242,12 +257,17 @@ public class User {
     } else {
       OrderStatus orderStatus = (OrderStatus) getResponse(CHECK,
               currentOrderID);
+      if (orderStatus == null) {
+        gui.showMessage("Oops! The server could not be reached. :(");
+        return;
+      }
       gui.showMessage("Order ID: " + currentOrderID + "\nStatus: " +
               orderStatus.name());
       this.logger.log(Level.INFO, System.currentTimeMillis() +
               ": Got the status of order from the OrderService = " +
               orderStatus.name());
-      if (orderStatus == OrderStatus.COMPLETE) {
+      if (orderStatus == OrderStatus.COMPLETE ||
+              orderStatus == OrderStatus.PAYMENT_FAILED) {
         currentOrderID = null;
       }
     }
@@ -255,81 +275,47 @@ public class User {
 
   /**
    * Add a layer before the remote method call to introduce a timeout of 5
-   * seconds, i.e., if the server does not respond within 5 seconds, we move
-   * on and do not keep waiting endlessly.
+   * seconds, i.e., if the server does not respond within 5 seconds, we give
+   * up and do not keep waiting endlessly. We move on to the next server only
+   * if this one cannot be reached. An order is sent again with the same
+   * request id until a server responds, so that it is placed only once.
    *
-   * @return the response received from server or null if it times out
+   * @return the response received from server or null if none responded
    */
-  private Object getResponse(UserOperation op, String name, long contact,
-                             HashMap<String, Integer> items, String orderID) {
-    ExecutorService executor = Executors.newSingleThreadExecutor();
-    Future<Object> future = executor.submit(new Task(name, contact, items,
-            orderID, op));
-    Object result = null;
+  private Object getResponse(UserOperation op, String requestID, String name,
+                             long contact, HashMap<String, Integer> items,
+                             String orderID) {
     try {
-      result = future.get(TIMEOUT, TimeUnit.SECONDS);
-    } catch (TimeoutException e) {
-      future.cancel(true);
+      if (op == UserOperation.ORDER) {
+        return runtime.callIdempotent(orderService -> orderService.placeOrder(
+                        requestID, name, contact, items),
+                TimeUnit.SECONDS.toMillis(TIMEOUT), ORDER_RETRY_MILLIS);
+      }
+      return runtime.call(orderService -> {
+        if (op == UserOperation.VIEW) {
+          return orderService.getMenu();
+        } else if (op == UserOperation.CHECK) {
+          return orderService.getOrderStatus(orderID);
+        }
+        return null;
+      }, TimeUnit.SECONDS.toMillis(TIMEOUT));
+    } catch (IOException e) {
       this.logger.log(Level.WARNING, System.currentTimeMillis() +
-              ": Server was taking too long to respond.");
-    } catch (ExecutionException | InterruptedException e) {
-      throw new RuntimeException(e);
+              ": Server could not be reached. Refer: " + e);
+      return null;
     }
-    executor.shutdownNow();
-    return result;
   }
 
   private Object getResponse(UserOperation op) {
-    return getResponse(op, "", 0L, null, "");
+    return getResponse(op, null, "", 0L, null, "");
   }
 
   private Object getResponse(UserOperation op, String orderID) {
-    return getResponse(op, "", 0L, null, orderID);
+    return getResponse(op, null, "", 0L, null, orderID);
   }
 
-  private Object getResponse(UserOperation op, String name, long contact,
-                             HashMap<String, Integer> items) {
-    return getResponse(op, name, contact, items, "");
-  }
-
-  class Task implements Callable<Object> {
-    String name;
-    long contact;
-    HashMap<String, Integer> items;
-    String orderID;
-    UserOperation op;
-
-    public Task(String name, long contact, HashMap<String, Integer> items,
-                String orderID, UserOperation op) {
-      this.name = name;
-      this.contact = contact;
-      this.items = items;
-      this.orderID = orderID;
-      this.op = op;
-    }
-
-    @Override
-    public Object call() throws Exception {
-      if (this.op == UserOperation.VIEW) {
-        try {
-          return orderService.getMenu();
-        } catch (Exception e) {
-          return secondaryOrderService.getMenu();
-        }
-      } else if (this.op == UserOperation.ORDER) {
-        try {
-          return orderService.placeOrder(name, contact, items);
-        } catch (ConnectException e) {
-          return secondaryOrderService.placeOrder(name, contact, items);
-        }
-      } else if (this.op == UserOperation.CHECK) {
-        try {
-          return orderService.getOrderStatus(currentOrderID);
-        } catch (ConnectException e) {
-          return secondaryOrderService.getOrderStatus(currentOrderID);
-        }
-      }
-      return null;
-    }
+  private Object getResponse(UserOperation op, String requestID, String name,
+                             long contact, HashMap<String, Integer> items) {
+    return getResponse(op, requestID, name, contact, items, "");
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,35 @@
+package server.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A checkpoint, i.e., all orders of the day written to its segment in the
+ * archive.
+ */
+@Name("restaurant.Checkpoint")
+@Label("Checkpoint")
+@Category({"Restaurant", "Order"})
+@Description("All orders of the day written to the archive")
+@StackTrace(false)
+public class CheckpointEvent extends Event {
+  @Label("Day")
+  public String day;
+
+  @Label("Orders")
+  public int orders;
+
+  @Label("Bytes")
+  @Description("Size of the segment written")
+  @DataAmount
+  public long bytes;
+
+  @Label("Failure")
+  @Description("What the checkpoint failed with, null if it succeeded")
+  public String failure;
+}
@@ -0,0 +1,28 @@
+package server.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A delivery agent claiming a ready order, including the time waited for
+ * one.
+ */
+@Name("restaurant.ClaimReadyOrder")
+@Label("Claim Ready Order")
+@Category({"Restaurant", "Kitchen"})
+@Description("A delivery agent claiming a ready order")
+@StackTrace(false)
+public class ClaimReadyOrderEvent extends Event {
+  @Label("Order ID")
+  @Description("The order claimed, null if none was ready in time")
+  public String orderID;
+
+  @Label("Timeout")
+  @Timespan(Timespan.MILLISECONDS)
+  public long timeoutMillis;
+}
@@ -0,0 +1,31 @@
+package server.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A chef taking placed orders off the queue of the kitchen, including the
+ * time waited for one.
+ */
+@Name("restaurant.DequeuePlacedOrders")
+@Label("Dequeue Placed Orders")
+@Category({"Restaurant", "Kitchen"})
+@Description("A chef taking placed orders off the queue")
+@StackTrace(false)
+public class DequeuePlacedOrdersEvent extends Event {
+  @Label("Orders")
+  public int orders;
+
+  @Label("Timeout")
+  @Timespan(Timespan.MILLISECONDS)
+  public long timeoutMillis;
+
+  @Label("Queued")
+  @Description("Placed orders left in the queue")
+  public int queued;
+}
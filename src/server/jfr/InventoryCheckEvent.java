@@ -0,0 +1,26 @@
+package server.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The check and reservation of the items of an order in the kitchen, see
+ * {@code KitchenService.reserveItems}.
+ */
+@Name("restaurant.InventoryCheck")
+@Label("Inventory Check")
+@Category({"Restaurant", "Order"})
+@Description("The items of an order being reserved in the kitchen")
+@StackTrace(false)
+public class InventoryCheckEvent extends Event {
+  @Label("Items")
+  @Description("Number of different items to be reserved")
+  public int items;
+
+  @Label("Reserved")
+  public boolean reserved;
+}
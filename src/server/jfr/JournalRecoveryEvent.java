@@ -0,0 +1,35 @@
+package server.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The order data of the day read back from the archive and the journal, as
+ * an OrderService does at startup.
+ */
+@Name("restaurant.JournalRecovery")
+@Label("Journal Recovery")
+@Category({"Restaurant", "Order"})
+@Description("The order data read back from disk at startup")
+@StackTrace(false)
+public class JournalRecoveryEvent extends Event {
+  @Label("Orders")
+  public int orders;
+
+  @Label("Events Replayed")
+  public int events;
+
+  @Label("Bytes")
+  @Description("Bytes of the segment and the journal read")
+  @DataAmount
+  public long bytes;
+
+  @Label("Failure")
+  @Description("What the recovery failed with, null if it succeeded")
+  public String failure;
+}
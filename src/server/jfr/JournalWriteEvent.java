@@ -0,0 +1,32 @@
+package server.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A batch of order events written to the journal and forced to disk, along
+ * with any checkpoint taken in between.
+ */
+@Name("restaurant.JournalWrite")
+@Label("Journal Write")
+@Category({"Restaurant", "Order"})
+@Description("A batch of order events written and forced to disk")
+@StackTrace(false)
+public class JournalWriteEvent extends Event {
+  @Label("Events")
+  public int events;
+
+  @Label("Bytes")
+  @Description("Bytes written to the journal, without checkpoints")
+  @DataAmount
+  public long bytes;
+
+  @Label("Failure")
+  @Description("What the write failed with, null if it succeeded")
+  public String failure;
+}
@@ -0,0 +1,28 @@
+package server.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A batch of placed orders handed to the kitchen, including the retries.
+ */
+@Name("restaurant.KitchenHandoff")
+@Label("Kitchen Hand-off")
+@Category({"Restaurant", "Order"})
+@Description("Placed orders handed to the kitchen")
+@StackTrace(false)
+public class KitchenHandoffEvent extends Event {
+  @Label("Orders")
+  public int orders;
+
+  @Label("Attempts")
+  public int attempts;
+
+  @Label("Handed Over")
+  @Description("False if the dispatcher was stopped first")
+  public boolean handedOver;
+}
@@ -0,0 +1,32 @@
+package server.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A batch of payments sent to the FinanceService, including the retries.
+ */
+@Name("restaurant.Payment")
+@Label("Payment")
+@Category({"Restaurant", "Order"})
+@Description("A batch of payments made with the FinanceService")
+@StackTrace(false)
+public class PaymentEvent extends Event {
+  @Label("Payments")
+  public int payments;
+
+  @Label("Amount")
+  @Description("Total amount of the payments")
+  public double amount;
+
+  @Label("Paid")
+  @Description("Number of payments made, the others were declined")
+  public int paid;
+
+  @Label("Attempts")
+  public int attempts;
+}
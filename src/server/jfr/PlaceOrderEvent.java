@@ -0,0 +1,35 @@
+package server.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A call of {@code placeOrder}, from the inventory check to the order being
+ * on disk. The inventory check is an event of its own within it; the
+ * payment follows later, in a batch, see {@link PaymentEvent}.
+ */
+@Name("restaurant.PlaceOrder")
+@Label("Place Order")
+@Category({"Restaurant", "Order"})
+@Description("An order being placed, up to it being on disk")
+@StackTrace(false)
+public class PlaceOrderEvent extends Event {
+  @Label("Order ID")
+  public String orderID;
+
+  @Label("Items")
+  @Description("Number of different items ordered")
+  public int items;
+
+  @Label("Amount")
+  public double amount;
+
+  @Label("Outcome")
+  @Description("PLACED, UNAVAILABLE, FAILED or DUPLICATE, the latter if " +
+          "the request was sent before")
+  public String outcome;
+}
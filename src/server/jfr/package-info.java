@@ -0,0 +1,16 @@
+/**
+ * Java Flight Recorder events of the order pipeline, from placing an order
+ * through the journal and the hand-off to the kitchen to the chefs and
+ * delivery agents taking orders off its queues.
+ * <p>
+ * They are recorded along with the JVM's own events, e.g. garbage
+ * collection and file I/O, so a stall of an order can be laid next to what
+ * the JVM was doing at that time. Nothing needs to be installed; a
+ * continuous recording is started with
+ * {@code -XX:StartFlightRecording:disk=true,maxage=1h,settings=default} or
+ * with {@code jcmd <pid> JFR.start}, and dumped with
+ * {@code jcmd <pid> JFR.dump filename=<file>}. The events are under the
+ * Restaurant category and named {@code restaurant.*}. While no recording
+ * runs, an event costs about as much as allocating it.
+ */
+package server.jfr;
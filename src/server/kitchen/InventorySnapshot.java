@@ -0,0 +1,41 @@
+package server.kitchen;
+
+import java.io.Serializable;
+import java.util.HashMap;
+
+/**
+ * The counts of all items at once, along with the version of the inventory
+ * they were read at. The version grows with every change of a count.
+ */
+public class InventorySnapshot implements Serializable {
+  private static final long serialVersionUID = 1L;
+  final long version;
+  final HashMap<String, Integer> counts;
+
+  public InventorySnapshot(long version, HashMap<String, Integer> counts) {
+    this.version = version;
+    this.counts = counts;
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * Get the count of specific item.
+   *
+   * @param itemName item name whose count needs to be determined
+   * @return count of item, 0 if it is unknown
+   */
+  public int getItemCount(String itemName) {
+    return counts.getOrDefault(itemName, 0);
+  }
+
+  @Override
+  public String toString() {
+    return "InventorySnapshot{" +
+            "version=" + version +
+            ", counts=" + counts +
+            '}';
+  }
+}
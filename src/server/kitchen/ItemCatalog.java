@@ -0,0 +1,51 @@
+package server.kitchen;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static shared.Constants.ITEM_NAMES;
+
+/**
+ * Maps the name of every item on the menu to a dense index, in the order of
+ * {@code ITEM_NAMES}, so that per-item data can be kept in arrays.
+ */
+final class ItemCatalog {
+  private static final List<String> NAMES = ITEM_NAMES;
+  private static final Map<String, Integer> INDEXES = initIndexes();
+
+  private ItemCatalog() {
+  }
+
+  private static Map<String, Integer> initIndexes() {
+    Map<String, Integer> indexes = new HashMap<>();
+    for (int i = 0; i < NAMES.size(); i++) {
+      indexes.put(NAMES.get(i), i);
+    }
+    return indexes;
+  }
+
+  /**
+   * @return number of items on the menu
+   */
+  static int size() {
+    return NAMES.size();
+  }
+
+  /**
+   * @param index index of an item
+   * @return name of the item
+   */
+  static String name(int index) {
+    return NAMES.get(index);
+  }
+
+  /**
+   * @param name name of an item
+   * @return index of the item, -1 if it is not on the menu
+   */
+  static int indexOf(String name) {
+    Integer index = name == null ? null : INDEXES.get(name);
+    return index == null ? -1 : index;
+  }
+}
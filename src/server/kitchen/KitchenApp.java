@@ -8,6 +8,8 @@ import java.rmi.registry.Registry;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import shared.metrics.Instrumentation;
+
 import static shared.Constants.KITCHEN_NAME;
 import static shared.Constants.KITCHEN_PORT;
 
@@ -40,13 +42,17 @@ public class KitchenApp {
   }
 
   private void startServer() throws IOException {
-    //  we will log calls to track which clients are connected and using
-    //  the service / making calls.
-    System.setProperty("java.rmi.server.logCalls", "true");
+    //  calls are counted and timed per method and published over JMX,
+    //  logging every call is left to -Djava.rmi.server.logCalls=true.
     Registry registry = LocateRegistry.createRegistry(KITCHEN_PORT);
     KitchenServiceImpl kitchenService =
             new KitchenServiceImpl();
-    registry.rebind(KITCHEN_NAME, kitchenService);
+    // clients call the service through a wrapper that measures every call
+    registry.rebind(KITCHEN_NAME,
+            Instrumentation.instrument(kitchenService, KITCHEN_NAME));
+    kitchenService.getStageMetrics().forEach((stage, metrics) ->
+            Instrumentation.publish(metrics, "type=OrderStage,stage=" +
+                    stage));
     this.logger.log(Level.INFO, System.currentTimeMillis() +
             ": KitchenService started at port " + KITCHEN_PORT + ".");
   }
@@ -2,6 +2,8 @@ package server.kitchen;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.HashMap;
+import java.util.List;
 
 import server.order.OrderInstance;
 import server.order.OrderStatus;
@@ -16,7 +18,8 @@ import server.order.OrderStatus;
 public interface KitchenService extends Remote {
 
   /**
-   * Process the new order placed.
+   * Process the new order placed. Its items must have been reserved
+   * already.
    *
    * @param newOrder the instance of the new order
    * @return true if the order was successfully added in the queue of placed
@@ -27,6 +30,39 @@ public interface KitchenService extends Remote {
   boolean processOrder(OrderInstance newOrder) throws RemoteException,
           InterruptedException;
 
+  /**
+   * Process a batch of new orders placed, in the given order. Their items
+   * must have been reserved already. Orders the kitchen has already, e.g.
+   * handed over again after a failover, are not queued again.
+   *
+   * @param newOrders the instances of the new orders
+   * @return true if the orders were successfully added in the queue of
+   * placed orders
+   * @throws RemoteException
+   */
+  boolean processOrders(List<OrderInstance> newOrders) throws RemoteException;
+
+  /**
+   * Check and reserve the items of an order at once, i.e., either all items
+   * are available and their counts are decremented, or nothing changes.
+   *
+   * @param items map of item name to the count needed
+   * @return the result with the count that was available per item
+   * @throws RemoteException
+   */
+  ReservationResult reserveItems(HashMap<String, Integer> items)
+          throws RemoteException;
+
+  /**
+   * Give back items that were reserved for an order which could not be
+   * placed after all.
+   *
+   * @param items map of item name to the count reserved
+   * @return true if the items are given back, else false
+   * @throws RemoteException
+   */
+  boolean releaseItems(HashMap<String, Integer> items) throws RemoteException;
+
   /**
    * Get the count of specific item.
    *
@@ -36,6 +72,27 @@ public interface KitchenService extends Remote {
    */
   int getItemCount(String itemName) throws RemoteException;
 
+  /**
+   * Get the counts of all items in one go.
+   *
+   * @return the counts along with the current inventory version
+   * @throws RemoteException
+   */
+  InventorySnapshot getInventory() throws RemoteException;
+
+  /**
+   * Wait until the inventory has changed since the given version, or until
+   * the timeout expires.
+   *
+   * @param knownVersion  the inventory version the caller already has
+   * @param timeoutMillis maximum time to wait in milliseconds
+   * @return the counts of all items if the inventory changed, else null
+   * @throws RemoteException
+   */
+  InventorySnapshot awaitInventoryChange(long knownVersion,
+                                         long timeoutMillis)
+          throws RemoteException;
+
   /**
    * Add new items, i.e., increment their count.
    *
@@ -50,7 +107,7 @@ public interface KitchenService extends Remote {
    * Mark the order as ready for delivery.
    *
    * @param orderID order id of the order that is ready
-   * @return true if added to set of ready order, false otherwise
+   * @return true if the placed order is ready now, false otherwise
    * @throws RemoteException
    */
   boolean orderReady(String orderID) throws RemoteException;
@@ -63,6 +120,21 @@ public interface KitchenService extends Remote {
    */
   OrderInstance dequeuePlacedOrder() throws RemoteException;
 
+  /**
+   * Remove the orders waiting in the placed order queue, waiting for up to
+   * the given time if there are none yet. Every order is handed to only one
+   * caller.
+   *
+   * @param maxOrders     maximum number of orders to be returned
+   * @param timeoutMillis time to wait for an order to be placed
+   * @return the placed orders in the order they were placed, empty if none
+   * was placed in time
+   * @throws RemoteException
+   * @throws InterruptedException
+   */
+  List<OrderInstance> awaitPlacedOrders(int maxOrders, long timeoutMillis)
+          throws RemoteException, InterruptedException;
+
   /**
    * Mark the order as delivered and complete.
    *
@@ -79,12 +151,53 @@ public interface KitchenService extends Remote {
   String findReadyOrder() throws RemoteException;
 
   /**
-   * Get the current status of order based on which set it is a part of
-   * (ready or complete).
+   * Claim the ready order that has been waiting the longest, waiting for up
+   * to the given time if there is none yet. Every ready order is assigned
+   * to only one caller.
+   *
+   * @param timeoutMillis time to wait for an order to be ready
+   * @return order id of the claimed order, null if none was ready in time
+   * @throws RemoteException
+   * @throws InterruptedException
+   */
+  String claimReadyOrder(long timeoutMillis) throws RemoteException,
+          InterruptedException;
+
+  /**
+   * Get the current status of order as known by the kitchen. An order moves
+   * from PLACED to READY to ASSIGNED to COMPLETE.
    *
    * @param orderID the order id for which status update is needed
-   * @return the current status from ready or complete else null
+   * @return the current status, null if the order is unknown or was
+   * delivered long enough ago to be evicted
    * @throws RemoteException
    */
   OrderStatus getOrderUpdate(String orderID) throws RemoteException;
+
+  /**
+   * Get when the order went through each stage so far, from being placed to
+   * being delivered.
+   *
+   * @param orderID the order id
+   * @return the timeline, null if the order is unknown or was delivered long
+   * enough ago to be evicted
+   * @throws RemoteException
+   */
+  OrderTimeline getOrderTimeline(String orderID) throws RemoteException;
+
+  /**
+   * Get the status transitions after the given sequence number, waiting for
+   * up to the given time if there are none yet. A subscriber that cannot
+   * resume from the given sequence number gets a snapshot first.
+   *
+   * @param epoch         epoch of the kitchen the subscriber was last fed by
+   * @param after         sequence number of the last event the subscriber has
+   * @param maxEvents     maximum number of events to be returned
+   * @param timeoutMillis maximum time to wait in milliseconds
+   * @return the events, possibly none, after the snapshot if one is needed
+   * @throws RemoteException
+   */
+  StatusEventBatch pollStatusEvents(long epoch, long after, int maxEvents,
+                                    long timeoutMillis)
+          throws RemoteException;
 }
@@ -2,18 +2,27 @@ package server.kitchen;
 
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.logging.Level;
-import java.util.logging.Logger;
 
+import server.jfr.ClaimReadyOrderEvent;
+import server.jfr.DequeuePlacedOrdersEvent;
 import server.order.OrderInstance;
 import server.order.OrderStatus;
+import shared.logging.AsyncLogger;
+import shared.metrics.StageMetrics;
 
-import static shared.Constants.ITEM_NAMES;
+import static shared.Constants.KITCHEN_COMPLETED_ORDER_TTL_MILLIS;
+import static shared.Constants.KITCHEN_STAGE_WINDOW_MILLIS;
 
 /**
  * Implementation of the KitchenService.
@@ -22,50 +31,231 @@ import static shared.Constants.ITEM_NAMES;
  */
 public class KitchenServiceImpl extends UnicastRemoteObject
         implements KitchenService {
-  static Set<String> ordersReady = new HashSet<>();
-  static Set<String> ordersComplete = new HashSet<>();
-  static Set<String> ordersAssigned = new HashSet<>();
-  private final Logger logger;
-  ConcurrentHashMap<String, Integer> itemCounts;
-  ConcurrentLinkedDeque<OrderInstance> ordersPlaced;
+  // how often delivered orders are checked for eviction
+  static final long SWEEP_INTERVAL_MILLIS = 60000;
+  // number of status events kept for subscribers that fall behind
+  static final int STATUS_BACKLOG_SIZE = 10000;
+  // number of steps the window of the stage latencies moves by
+  static final int STAGE_WINDOW_SLICES = 6;
+  private final AsyncLogger logger;
+  // state of every order the kitchen knows of, see transition()
+  final ConcurrentHashMap<String, OrderState> orderStates;
+  // how long a delivered order is kept in orderStates
+  final long completedOrderTtlMillis;
+  // count per item, indexed by ItemCatalog
+  AtomicIntegerArray itemCounts;
+  // bumped on every change of the counts, guarded by inventoryMonitor
+  long inventoryVersion;
+  private final Object inventoryMonitor = new Object();
+  // notified on every status transition of an order, transitions are
+  // published under it so that the events are in the order they happened
+  private final Object statusMonitor = new Object();
+  // identifies this kitchen, status sequence numbers are only valid within it
+  final long statusEpoch = System.currentTimeMillis();
+  // the latest status events, guarded by statusMonitor
+  private final StatusEvent[] statusBacklog =
+          new StatusEvent[STATUS_BACKLOG_SIZE];
+  private long statusSequence = 0;
+  LinkedBlockingDeque<OrderInstance> ordersPlaced;
+  // ready orders not yet assigned to a delivery agent, oldest first
+  LinkedBlockingQueue<String> readyQueue;
+  // time spent per stage of an order over the last window, see OrderTimeline
+  final StageMetrics handOff;
+  final StageMetrics queueWait;
+  final StageMetrics prepTime;
+  final StageMetrics dispatchWait;
+  final StageMetrics deliveryTime;
+  final StageMetrics totalTime;
 
   public KitchenServiceImpl() throws RemoteException {
+    this(KITCHEN_COMPLETED_ORDER_TTL_MILLIS);
+  }
+
+  /**
+   * @param completedOrderTtlMillis how long a delivered order is remembered
+   * @throws RemoteException
+   */
+  public KitchenServiceImpl(long completedOrderTtlMillis)
+          throws RemoteException {
     super();
-    this.ordersPlaced = new ConcurrentLinkedDeque<>();
-    this.logger = Logger.getLogger(KitchenServiceImpl.class.getName());
+    this.ordersPlaced = new LinkedBlockingDeque<>();
+    this.readyQueue = new LinkedBlockingQueue<>();
+    this.orderStates = new ConcurrentHashMap<>();
+    this.completedOrderTtlMillis = completedOrderTtlMillis;
+    this.handOff = newStageMetrics();
+    this.queueWait = newStageMetrics();
+    this.prepTime = newStageMetrics();
+    this.dispatchWait = newStageMetrics();
+    this.deliveryTime = newStageMetrics();
+    this.totalTime = newStageMetrics();
+    this.logger = AsyncLogger.getLogger(KitchenServiceImpl.class.getName());
     initializeItemCounts();
+    Thread sweeper = new Thread(this::sweepCompletedOrders, "order-sweeper");
+    sweeper.setDaemon(true);
+    sweeper.start();
+  }
+
+  private static StageMetrics newStageMetrics() {
+    return new StageMetrics(KITCHEN_STAGE_WINDOW_MILLIS, STAGE_WINDOW_SLICES);
+  }
+
+  /**
+   * Get the time orders spend in each stage, over the last window, to be
+   * published along with the service.
+   *
+   * @return the metrics by name of the stage, in the order of the stages
+   */
+  public Map<String, StageMetrics> getStageMetrics() {
+    Map<String, StageMetrics> stages = new LinkedHashMap<>();
+    stages.put("handOff", handOff);
+    stages.put("queueWait", queueWait);
+    stages.put("prepTime", prepTime);
+    stages.put("dispatchWait", dispatchWait);
+    stages.put("deliveryTime", deliveryTime);
+    stages.put("total", totalTime);
+    return stages;
   }
 
   /**
    * Initialize item counts to 0 in the beginning.
    */
   private void initializeItemCounts() {
-    this.itemCounts = new ConcurrentHashMap<>();
-    for (String item : ITEM_NAMES) {
-      this.itemCounts.put(item, 0);
+    this.itemCounts = new AtomicIntegerArray(ItemCatalog.size());
+    this.logger.log(Level.INFO, "Initialized item counts to zero.");
+  }
+
+  /**
+   * Check and reserve the items of an order at once, i.e., either all items
+   * are available and their counts are decremented, or nothing changes.
+   * Each count is taken by compare-and-set; if an item runs short, the
+   * counts already taken are given back. Another order may thus briefly see
+   * those counts missing, so a failed reservation is retried until it takes
+   * the counts or an item is really short; it never reports success without
+   * having taken them. Items that are not on the menu or are needed in a
+   * negative count are never reserved.
+   *
+   * @param items map of item name to the count needed
+   * @return the result with the count that was available per item
+   * @throws RemoteException
+   */
+  @Override
+  public ReservationResult reserveItems(HashMap<String, Integer> items)
+          throws RemoteException {
+    while (true) {
+      HashMap<String, Integer> available = tryReserve(items);
+      if (available != null) {
+        inventoryChanged();
+        this.logger.log(Level.INFO, "Reserved items {}.", items);
+        return new ReservationResult(true, available, new ArrayList<>());
+      }
+      ReservationResult result = check(items);
+      if (!result.isReserved()) {
+        return result;
+      }
+      // the counts suffice again, another order only held them briefly
+      Thread.onSpinWait();
+    }
+  }
+
+  /**
+   * Take the counts of all items, or none.
+   *
+   * @return the count per item before it was taken, null if an item was
+   * short or cannot be reserved and the counts already taken were given back
+   */
+  private HashMap<String, Integer> tryReserve(HashMap<String, Integer> items) {
+    HashMap<String, Integer> available = new HashMap<>();
+    for (Map.Entry<String, Integer> entry : items.entrySet()) {
+      int index = ItemCatalog.indexOf(entry.getKey());
+      int count = isReservable(index, entry.getValue()) ?
+              take(index, entry.getValue()) : -1;
+      if (count < 0) {
+        // give back what was taken, the map iterates in the same order
+        for (Map.Entry<String, Integer> taken : items.entrySet()) {
+          if (taken == entry) {
+            break;
+          }
+          itemCounts.addAndGet(ItemCatalog.indexOf(taken.getKey()),
+                  taken.getValue());
+        }
+        return null;
+      }
+      available.put(entry.getKey(), count);
     }
-    this.logger.log(Level.INFO, System.currentTimeMillis() +
-            ": Initialized item counts to zero.");
+    return available;
   }
 
   /**
-   * Remove the items' counts which have been ordered.
+   * @param index  index of the item, -1 if it is not on the menu
+   * @param needed the count needed
+   * @return true if the item is on the menu and the count is not negative
+   */
+  private static boolean isReservable(int index, Integer needed) {
+    return index >= 0 && needed != null && needed >= 0;
+  }
+
+  /**
+   * Take the needed count of an item if there is enough of it.
    *
-   * @param order instance whose items have been ordered so have to be
-   *              removed from list of items
+   * @return the count before it was taken, -1 if there was not enough
    */
-  private void removeItems(OrderInstance order) {
-    HashMap<String, Integer> items = order.getItems();
-    for (String item : items.keySet()) {
-      int oldCount = this.itemCounts.get(item);
-      this.itemCounts.put(item, oldCount - items.get(item));
+  private int take(int index, int needed) {
+    int count = itemCounts.get(index);
+    while (count >= needed) {
+      if (itemCounts.compareAndSet(index, count, count - needed)) {
+        return count;
+      }
+      count = itemCounts.get(index);
+    }
+    return -1;
+  }
+
+  /**
+   * Check if the items are available in the needed counts.
+   */
+  private ReservationResult check(HashMap<String, Integer> items) {
+    HashMap<String, Integer> available = new HashMap<>();
+    List<String> unavailable = new ArrayList<>();
+    for (Map.Entry<String, Integer> entry : items.entrySet()) {
+      // only items on the menu can be reserved
+      int index = ItemCatalog.indexOf(entry.getKey());
+      int count = index < 0 ? 0 : itemCounts.get(index);
+      available.put(entry.getKey(), count);
+      if (!isReservable(index, entry.getValue()) ||
+              count < entry.getValue()) {
+        unavailable.add(entry.getKey());
+      }
+    }
+    return new ReservationResult(unavailable.isEmpty(), available,
+            unavailable);
+  }
+
+  /**
+   * Give back items that were reserved for an order which could not be
+   * placed after all.
+   *
+   * @param items map of item name to the count reserved
+   * @return true if the items are given back, else false
+   * @throws RemoteException
+   */
+  @Override
+  public boolean releaseItems(HashMap<String, Integer> items)
+          throws RemoteException {
+    for (Map.Entry<String, Integer> entry : items.entrySet()) {
+      int index = ItemCatalog.indexOf(entry.getKey());
+      // only what could have been reserved is given back
+      if (isReservable(index, entry.getValue())) {
+        itemCounts.addAndGet(index, entry.getValue());
+      }
     }
-    this.logger.log(Level.INFO, System.currentTimeMillis() +
-            ": Removed items that have been ordered.");
+    inventoryChanged();
+    this.logger.log(Level.INFO, "Released items {}.", items);
+    return true;
   }
 
   /**
-   * Process the new order placed.
+   * Process the new order placed. Its items must have been reserved
+   * already. An order the kitchen has already is not queued again.
    *
    * @param newOrder the instance of the new order
    * @return true if the order was successfully added in the queue of placed
@@ -76,35 +266,228 @@ public class KitchenServiceImpl extends UnicastRemoteObject
   @Override
   public boolean processOrder(OrderInstance newOrder)
           throws RemoteException {
-    removeItems(newOrder);
-    ordersPlaced.add(newOrder);
-    this.logger.log(Level.INFO, System.currentTimeMillis() +
-            ": A new order with ID: " + newOrder.getOrderID() + "has been " +
-            "added " +
-            "to the placed orders' queue.");
+    if (received(newOrder)) {
+      ordersPlaced.add(newOrder);
+    }
+    this.logger.log(Level.INFO, "A new order with ID: {} has been added " +
+            "to the placed orders' queue.", newOrder.getOrderID());
     return true;
   }
 
   /**
-   * Get the current status of order based on which set it is a part of
-   * (ready or complete).
+   * Process a batch of new orders placed, in the given order. Their items
+   * must have been reserved already. Orders the kitchen has already are not
+   * queued again.
+   *
+   * @param newOrders the instances of the new orders
+   * @return true if the orders were successfully added in the queue of
+   * placed orders
+   * @throws RemoteException
+   */
+  @Override
+  public boolean processOrders(List<OrderInstance> newOrders)
+          throws RemoteException {
+    for (OrderInstance newOrder : newOrders) {
+      if (received(newOrder)) {
+        ordersPlaced.add(newOrder);
+      }
+    }
+    if (this.logger.isLoggable(Level.INFO)) {
+      this.logger.log(Level.INFO, "{} new orders have been added to the " +
+              "placed orders' queue.", newOrders.size());
+    }
+    return true;
+  }
+
+  /**
+   * Start the timeline of a new order, unless the kitchen has it already,
+   * e.g. because it was handed over again after a failover.
+   *
+   * @param newOrder the order
+   * @return true if the order is new to the kitchen
+   */
+  private boolean received(OrderInstance newOrder) {
+    OrderState state = new OrderState(newOrder.getPlacedAt());
+    if (orderStates.putIfAbsent(newOrder.getOrderID(), state) != null) {
+      return false;
+    }
+    if (state.placedAt != 0) {
+      handOff.record(state.placedAt, state.receivedAt);
+    }
+    return true;
+  }
+
+  /**
+   * Record that a chef took a placed order from the queue.
+   *
+   * @param orderID the order id
+   */
+  private void taken(String orderID) {
+    long now = System.currentTimeMillis();
+    while (true) {
+      OrderState current = orderStates.get(orderID);
+      if (current == null || current.status != OrderStatus.PLACED ||
+              current.takenAt != 0) {
+        return;
+      }
+      if (orderStates.replace(orderID, current, current.taken(now))) {
+        queueWait.record(current.receivedAt, now);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Record the time the order spent in the stage it just left.
+   *
+   * @param state the state the order has just entered
+   */
+  private void recordStage(OrderState state) {
+    switch (state.status) {
+      case READY:
+        // an order readied without being taken from the queue has no
+        // prep time of its own
+        if (state.takenAt != 0) {
+          prepTime.record(state.takenAt, state.readyAt);
+        }
+        break;
+      case ASSIGNED:
+        dispatchWait.record(state.readyAt, state.assignedAt);
+        break;
+      case COMPLETE:
+        deliveryTime.record(state.assignedAt, state.since);
+        totalTime.record(state.placedAt != 0 ? state.placedAt :
+                state.receivedAt, state.since);
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Get when the order went through each stage so far.
+   *
+   * @param orderID the order id
+   * @return the timeline, null if the order is unknown or was delivered long
+   * enough ago to be evicted
+   * @throws RemoteException
+   */
+  @Override
+  public OrderTimeline getOrderTimeline(String orderID)
+          throws RemoteException {
+    OrderState state = orderStates.get(orderID);
+    return state == null ? null : state.timeline(orderID);
+  }
+
+  /**
+   * Get the current status of order as known by the kitchen.
    *
    * @param orderID the order id for which status update is needed
-   * @return the current status from ready or complete else null
+   * @return the current status, null if the order is unknown or was
+   * delivered long enough ago to be evicted
    * @throws RemoteException
    */
   @Override
   public OrderStatus getOrderUpdate(String orderID) throws RemoteException {
-    if (ordersComplete.contains(orderID)) {
-      this.logger.log(Level.INFO, System.currentTimeMillis() +
-              ": Returning COMPLETE order status.");
-      return OrderStatus.COMPLETE;
-    } else if (ordersReady.contains(orderID)) {
-      this.logger.log(Level.INFO, System.currentTimeMillis() +
-              ": Returning READY order status.");
-      return OrderStatus.READY;
+    OrderState state = orderStates.get(orderID);
+    if (state == null) {
+      return null;
+    }
+    this.logger.log(Level.INFO, "Returning {} order status.", state.status);
+    return state.status;
+  }
+
+  /**
+   * Move an order from one status to the next. Concurrent transitions of
+   * the same order are resolved by compare-and-set, so exactly one of them
+   * succeeds.
+   *
+   * @param orderID the order id
+   * @param from    the status the order must be in
+   * @param to      the status to move it to
+   * @return true if the order was moved, false if it was not in {@code from}
+   */
+  private boolean transition(String orderID, OrderStatus from,
+                             OrderStatus to) {
+    while (true) {
+      OrderState current = orderStates.get(orderID);
+      if (current == null || current.status != from) {
+        return false;
+      }
+      OrderState next = current.next(to, System.currentTimeMillis());
+      synchronized (statusMonitor) {
+        if (orderStates.replace(orderID, current, next)) {
+          statusSequence++;
+          statusBacklog[(int) (statusSequence % STATUS_BACKLOG_SIZE)] =
+                  new StatusEvent(statusSequence, orderID, to);
+          statusMonitor.notifyAll();
+        } else {
+          continue;
+        }
+      }
+      recordStage(next);
+      return true;
+    }
+  }
+
+  /**
+   * Get the status transitions after the given sequence number, waiting for
+   * up to the given time if there are none yet. A subscriber that cannot
+   * resume from the given sequence number gets a snapshot first.
+   *
+   * @param epoch         epoch of the kitchen the subscriber was last fed by
+   * @param after         sequence number of the last event the subscriber has
+   * @param maxEvents     maximum number of events to be returned
+   * @param timeoutMillis maximum time to wait in milliseconds
+   * @return the events, possibly none, after the snapshot if one is needed
+   * @throws RemoteException
+   */
+  @Override
+  public StatusEventBatch pollStatusEvents(long epoch, long after,
+                                           int maxEvents, long timeoutMillis)
+          throws RemoteException {
+    synchronized (statusMonitor) {
+      if (epoch == statusEpoch && statusSequence == after &&
+              timeoutMillis > 0) {
+        try {
+          statusMonitor.wait(timeoutMillis);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      if (epoch != statusEpoch || after > statusSequence ||
+              after < statusSequence - STATUS_BACKLOG_SIZE) {
+        HashMap<String, OrderStatus> snapshot = new HashMap<>();
+        orderStates.forEach((orderID, state) ->
+                snapshot.put(orderID, state.status));
+        return new StatusEventBatch(statusEpoch, snapshot, new ArrayList<>(),
+                statusSequence);
+      }
+      List<StatusEvent> events = new ArrayList<>();
+      long s = after;
+      while (s < statusSequence && events.size() < maxEvents) {
+        s++;
+        events.add(statusBacklog[(int) (s % STATUS_BACKLOG_SIZE)]);
+      }
+      return new StatusEventBatch(statusEpoch, null, events, s);
+    }
+  }
+
+  /**
+   * Evict delivered orders once they are older than the TTL.
+   */
+  private void sweepCompletedOrders() {
+    while (true) {
+      try {
+        Thread.sleep(Math.min(SWEEP_INTERVAL_MILLIS,
+                Math.max(1, completedOrderTtlMillis)));
+      } catch (InterruptedException e) {
+        return;
+      }
+      long expiry = System.currentTimeMillis() - completedOrderTtlMillis;
+      orderStates.values().removeIf(state ->
+              state.status == OrderStatus.COMPLETE && state.since < expiry);
     }
-    return null;
   }
 
   /**
@@ -118,16 +501,14 @@ public class KitchenServiceImpl extends UnicastRemoteObject
   @Override
   public boolean addItem(String itemName, int itemQuantity)
           throws RemoteException {
-    try {
-      int previousQuantity = itemCounts.getOrDefault(itemName, 0);
-      itemCounts.put(itemName, previousQuantity + itemQuantity);
-      this.logger.log(Level.INFO, System.currentTimeMillis() +
-              ": Items count has been updated.");
-    } catch (Exception e) {
-      this.logger.log(Level.WARNING, System.currentTimeMillis() +
-              ": Item count could not be updated.");
+    int index = ItemCatalog.indexOf(itemName);
+    if (index < 0) {
+      this.logger.log(Level.WARNING, "Item count could not be updated.");
       return false;
     }
+    itemCounts.addAndGet(index, itemQuantity);
+    inventoryChanged();
+    this.logger.log(Level.INFO, "Items count has been updated.");
     return true;
   }
 
@@ -135,18 +516,18 @@ public class KitchenServiceImpl extends UnicastRemoteObject
    * Mark the order as ready for delivery.
    *
    * @param orderID order id of the order that is ready
-   * @return true if added to set of ready order, false otherwise
+   * @return true if the placed order is ready now, false otherwise
    * @throws RemoteException
    */
   @Override
   public boolean orderReady(String orderID) throws RemoteException {
-    try {
-      ordersReady.add(orderID);
-      this.logger.log(Level.WARNING, System.currentTimeMillis() +
-              ": Order with ID = " + orderID + " is ready now!");
-    } catch (Exception e) {
+    if (!transition(orderID, OrderStatus.PLACED, OrderStatus.READY)) {
+      this.logger.log(Level.WARNING,
+              "Order with ID = {} is not a placed order.", orderID);
       return false;
     }
+    readyQueue.add(orderID);
+    this.logger.log(Level.WARNING, "Order with ID = {} is ready now!", orderID);
     return true;
   }
 
@@ -161,19 +542,131 @@ public class KitchenServiceImpl extends UnicastRemoteObject
     if (ordersPlaced.isEmpty()) {
       return null;
     }
-    return ordersPlaced.poll();
+    DequeuePlacedOrdersEvent event = new DequeuePlacedOrdersEvent();
+    event.begin();
+    OrderInstance order = ordersPlaced.poll();
+    if (order != null) {
+      taken(order.getOrderID());
+      event.orders = 1;
+    }
+    if (event.shouldCommit()) {
+      event.queued = ordersPlaced.size();
+      event.commit();
+    }
+    return order;
+  }
+
+  /**
+   * Remove the orders waiting in the placed order queue, waiting for up to
+   * the given time if there are none yet. Every order is handed to only one
+   * caller.
+   *
+   * @param maxOrders     maximum number of orders to be returned
+   * @param timeoutMillis time to wait for an order to be placed
+   * @return the placed orders in the order they were placed, empty if none
+   * was placed in time
+   * @throws RemoteException
+   * @throws InterruptedException
+   */
+  @Override
+  public List<OrderInstance> awaitPlacedOrders(int maxOrders,
+                                               long timeoutMillis)
+          throws RemoteException, InterruptedException {
+    DequeuePlacedOrdersEvent event = new DequeuePlacedOrdersEvent();
+    event.begin();
+    List<OrderInstance> orders = new ArrayList<>();
+    OrderInstance first = ordersPlaced.poll(timeoutMillis,
+            TimeUnit.MILLISECONDS);
+    if (first != null) {
+      orders.add(first);
+      ordersPlaced.drainTo(orders, maxOrders - 1);
+    }
+    for (OrderInstance order : orders) {
+      taken(order.getOrderID());
+    }
+    if (event.shouldCommit()) {
+      event.orders = orders.size();
+      event.timeoutMillis = timeoutMillis;
+      event.queued = ordersPlaced.size();
+      event.commit();
+    }
+    return orders;
+  }
+
+  /**
+   * Bump the inventory version after the counts changed and wake up
+   * whoever is waiting for it.
+   */
+  private void inventoryChanged() {
+    synchronized (inventoryMonitor) {
+      inventoryVersion++;
+      inventoryMonitor.notifyAll();
+    }
+  }
+
+  /**
+   * Get the counts of all items in one go.
+   *
+   * @return the counts along with the current inventory version
+   * @throws RemoteException
+   */
+  @Override
+  public InventorySnapshot getInventory() throws RemoteException {
+    long version;
+    synchronized (inventoryMonitor) {
+      version = inventoryVersion;
+    }
+    // read after the version, so the counts are at least that recent
+    HashMap<String, Integer> counts = new HashMap<>();
+    for (int i = 0; i < ItemCatalog.size(); i++) {
+      counts.put(ItemCatalog.name(i), itemCounts.get(i));
+    }
+    return new InventorySnapshot(version, counts);
+  }
+
+  /**
+   * Wait until the inventory has changed since the given version, or until
+   * the timeout expires.
+   *
+   * @param knownVersion  the inventory version the caller already has
+   * @param timeoutMillis maximum time to wait in milliseconds
+   * @return the counts of all items if the inventory changed, else null
+   * @throws RemoteException
+   */
+  @Override
+  public InventorySnapshot awaitInventoryChange(long knownVersion,
+                                                long timeoutMillis)
+          throws RemoteException {
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    synchronized (inventoryMonitor) {
+      long remaining = timeoutMillis;
+      while (inventoryVersion <= knownVersion && remaining > 0) {
+        try {
+          inventoryMonitor.wait(remaining);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return null;
+        }
+        remaining = deadline - System.currentTimeMillis();
+      }
+      if (inventoryVersion <= knownVersion) {
+        return null;
+      }
+    }
+    return getInventory();
   }
 
   /**
    * Get the count of specific item.
    *
    * @param itemName item name whose count needs to be determined
-   * @return count of item from map of item names and their current counts
+   * @return current count of item, 0 if it is not on the menu
    * @throws RemoteException
    */
   @Override
   public int getItemCount(String itemName) throws RemoteException {
-    return itemCounts.get(itemName);
+    int index = ItemCatalog.indexOf(itemName);
+    return index < 0 ? 0 : itemCounts.get(index);
   }
 
   /**
@@ -184,12 +677,7 @@ public class KitchenServiceImpl extends UnicastRemoteObject
    */
   @Override
   public boolean markDelivered(String orderID) {
-    try {
-      ordersComplete.add(orderID);
-    } catch (Exception e) {
-      return false;
-    }
-    return true;
+    return transition(orderID, OrderStatus.ASSIGNED, OrderStatus.COMPLETE);
   }
 
   /**
@@ -198,15 +686,113 @@ public class KitchenServiceImpl extends UnicastRemoteObject
    * @return order id of a ready, unassigned order, otherwise null
    */
   @Override
-  public synchronized String findReadyOrder() {
-    for (String orderID : ordersReady) {
-      if (!ordersComplete.contains(orderID) && !ordersAssigned.contains(orderID)) {
-        ordersAssigned.add(orderID);
-        this.logger.log(Level.WARNING, System.currentTimeMillis() +
-                ": Ready order with ID = " + orderID + " is assigned now!");
+  public String findReadyOrder() {
+    try {
+      return claimReadyOrder(0);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    }
+  }
+
+  /**
+   * Claim the ready order that has been waiting the longest, waiting for up
+   * to the given time if there is none yet. Every ready order is assigned
+   * to only one caller.
+   *
+   * @param timeoutMillis time to wait for an order to be ready
+   * @return order id of the claimed order, null if none was ready in time
+   * @throws InterruptedException
+   */
+  @Override
+  public String claimReadyOrder(long timeoutMillis)
+          throws InterruptedException {
+    ClaimReadyOrderEvent event = new ClaimReadyOrderEvent();
+    event.begin();
+    event.timeoutMillis = timeoutMillis;
+    try {
+      event.orderID = claimReadyOrderUntil(System.currentTimeMillis() +
+              timeoutMillis);
+      return event.orderID;
+    } finally {
+      event.commit();
+    }
+  }
+
+  /**
+   * Claim a ready order, see {@link #claimReadyOrder(long)}.
+   *
+   * @param deadline time until which to wait for an order to be ready
+   */
+  private String claimReadyOrderUntil(long deadline)
+          throws InterruptedException {
+    while (true) {
+      String orderID = readyQueue.poll(
+              Math.max(0, deadline - System.currentTimeMillis()),
+              TimeUnit.MILLISECONDS);
+      if (orderID == null) {
+        return null;
+      }
+      if (transition(orderID, OrderStatus.READY, OrderStatus.ASSIGNED)) {
+        this.logger.log(Level.WARNING,
+                "Ready order with ID = {} is assigned now!", orderID);
         return orderID;
       }
     }
-    return null;
+  }
+
+  /**
+   * The status of an order in the kitchen and since when it is in it, along
+   * with when it reached the stages before, see {@link OrderTimeline}. A new
+   * instance is created for every transition, and when a chef takes the
+   * order.
+   */
+  static final class OrderState {
+    final OrderStatus status;
+    final long since;
+    final long placedAt;
+    final long receivedAt;
+    final long takenAt;
+    final long readyAt;
+    final long assignedAt;
+
+    /**
+     * State of an order the kitchen has just received.
+     *
+     * @param placedAt when the order was placed, 0 if that is not known
+     */
+    OrderState(long placedAt) {
+      this(OrderStatus.PLACED, System.currentTimeMillis(), placedAt, 0, 0, 0,
+              0);
+    }
+
+    private OrderState(OrderStatus status, long since, long placedAt,
+                       long receivedAt, long takenAt, long readyAt,
+                       long assignedAt) {
+      this.status = status;
+      this.since = since;
+      this.placedAt = placedAt;
+      this.receivedAt = receivedAt == 0 ? since : receivedAt;
+      this.takenAt = takenAt;
+      this.readyAt = readyAt;
+      this.assignedAt = assignedAt;
+    }
+
+    OrderState next(OrderStatus to, long now) {
+      return new OrderState(to, now, placedAt, receivedAt, takenAt,
+              to == OrderStatus.READY ? now : readyAt,
+              to == OrderStatus.ASSIGNED ? now : assignedAt);
+    }
+
+    OrderState taken(long now) {
+      return new OrderState(status, since, placedAt, receivedAt, now, readyAt,
+              assignedAt);
+    }
+
+    OrderTimeline timeline(String orderID) {
+      return new OrderTimeline(orderID, status, placedAt, receivedAt, takenAt,
+              readyAt, assignedAt,
+              status == OrderStatus.COMPLETE ? since : 0);
+    }
   }
 }
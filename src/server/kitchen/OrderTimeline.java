@@ -0,0 +1,92 @@
+package server.kitchen;
+
+import java.io.Serializable;
+
+import server.order.OrderStatus;
+
+/**
+ * When an order went through each stage on its way from being placed to
+ * being delivered, in milliseconds since the epoch; 0 for a stage it has
+ * not reached yet. The stages in between are
+ * <ul>
+ *   <li>hand-off, from placed to received by the kitchen,</li>
+ *   <li>queue wait, from received to taken by a chef,</li>
+ *   <li>prep time, from taken to ready,</li>
+ *   <li>dispatch wait, from ready to assigned to a delivery agent and</li>
+ *   <li>delivery time, from assigned to delivered.</li>
+ * </ul>
+ */
+public class OrderTimeline implements Serializable {
+  private static final long serialVersionUID = 1L;
+  final String orderID;
+  final OrderStatus status;
+  final long placedAt;
+  final long receivedAt;
+  final long takenAt;
+  final long readyAt;
+  final long assignedAt;
+  final long deliveredAt;
+
+  OrderTimeline(String orderID, OrderStatus status, long placedAt,
+                long receivedAt, long takenAt, long readyAt, long assignedAt,
+                long deliveredAt) {
+    this.orderID = orderID;
+    this.status = status;
+    this.placedAt = placedAt;
+    this.receivedAt = receivedAt;
+    this.takenAt = takenAt;
+    this.readyAt = readyAt;
+    this.assignedAt = assignedAt;
+    this.deliveredAt = deliveredAt;
+  }
+
+  public String getOrderID() {
+    return orderID;
+  }
+
+  public OrderStatus getStatus() {
+    return status;
+  }
+
+  public long getPlacedAt() {
+    return placedAt;
+  }
+
+  public long getReceivedAt() {
+    return receivedAt;
+  }
+
+  public long getTakenAt() {
+    return takenAt;
+  }
+
+  public long getReadyAt() {
+    return readyAt;
+  }
+
+  public long getAssignedAt() {
+    return assignedAt;
+  }
+
+  public long getDeliveredAt() {
+    return deliveredAt;
+  }
+
+  @Override
+  public String toString() {
+    return "OrderTimeline{" +
+            "orderID='" + orderID + '\'' +
+            ", status=" + status +
+            ", placedAt=" + placedAt +
+            ", handOffMillis=" + between(placedAt, receivedAt) +
+            ", queueWaitMillis=" + between(receivedAt, takenAt) +
+            ", prepMillis=" + between(takenAt, readyAt) +
+            ", dispatchWaitMillis=" + between(readyAt, assignedAt) +
+            ", deliveryMillis=" + between(assignedAt, deliveredAt) +
+            '}';
+  }
+
+  private static String between(long from, long to) {
+    return from == 0 || to == 0 ? "-" : String.valueOf(to - from);
+  }
+}
@@ -0,0 +1,54 @@
+package server.kitchen;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Result of reserving the items of an order: whether the whole order was
+ * reserved and, per item, the count that was available when it was checked.
+ */
+public class ReservationResult implements Serializable {
+  private static final long serialVersionUID = 1L;
+  final boolean reserved;
+  final HashMap<String, Integer> available;
+  final List<String> unavailable;
+
+  public ReservationResult(boolean reserved,
+                           HashMap<String, Integer> available,
+                           List<String> unavailable) {
+    this.reserved = reserved;
+    this.available = available;
+    this.unavailable = unavailable;
+  }
+
+  /**
+   * @return true if all items were reserved, false if none were
+   */
+  public boolean isReserved() {
+    return reserved;
+  }
+
+  /**
+   * @return map of item name to the count that was available
+   */
+  public HashMap<String, Integer> getAvailable() {
+    return available;
+  }
+
+  /**
+   * @return names of the items that were not available in the needed count
+   */
+  public List<String> getUnavailable() {
+    return unavailable;
+  }
+
+  @Override
+  public String toString() {
+    return "ReservationResult{" +
+            "reserved=" + reserved +
+            ", available=" + available +
+            ", unavailable=" + unavailable +
+            '}';
+  }
+}
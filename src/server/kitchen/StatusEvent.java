@@ -0,0 +1,43 @@
+package server.kitchen;
+
+import java.io.Serializable;
+
+import server.order.OrderStatus;
+
+/**
+ * A status transition of an order in the kitchen. The sequence numbers of
+ * the events of one kitchen grow by one per transition, starting from 1.
+ */
+public class StatusEvent implements Serializable {
+  private static final long serialVersionUID = 1L;
+  final long sequence;
+  final String orderID;
+  final OrderStatus status;
+
+  public StatusEvent(long sequence, String orderID, OrderStatus status) {
+    this.sequence = sequence;
+    this.orderID = orderID;
+    this.status = status;
+  }
+
+  public long getSequence() {
+    return sequence;
+  }
+
+  public String getOrderID() {
+    return orderID;
+  }
+
+  public OrderStatus getStatus() {
+    return status;
+  }
+
+  @Override
+  public String toString() {
+    return "StatusEvent{" +
+            "sequence=" + sequence +
+            ", orderID='" + orderID + '\'' +
+            ", status=" + status +
+            '}';
+  }
+}
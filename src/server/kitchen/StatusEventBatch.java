@@ -0,0 +1,67 @@
+package server.kitchen;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.List;
+
+import server.order.OrderStatus;
+
+/**
+ * The status events a subscriber asked for. If the subscriber cannot
+ * resume where it left off, because the kitchen restarted (different epoch)
+ * or the events are not in the backlog anymore, the batch starts with a
+ * snapshot of the status of every order the kitchen knows of, taken at
+ * the sequence number the events continue from.
+ */
+public class StatusEventBatch implements Serializable {
+  private static final long serialVersionUID = 1L;
+  final long epoch;
+  final HashMap<String, OrderStatus> snapshot;
+  final List<StatusEvent> events;
+  final long lastSequence;
+
+  public StatusEventBatch(long epoch, HashMap<String, OrderStatus> snapshot,
+                          List<StatusEvent> events, long lastSequence) {
+    this.epoch = epoch;
+    this.snapshot = snapshot;
+    this.events = events;
+    this.lastSequence = lastSequence;
+  }
+
+  /**
+   * @return identifies the kitchen, sequence numbers are only valid within
+   * it
+   */
+  public long getEpoch() {
+    return epoch;
+  }
+
+  /**
+   * @return status per order id, null if the events follow on from the
+   * sequence number the subscriber asked for
+   */
+  public HashMap<String, OrderStatus> getSnapshot() {
+    return snapshot;
+  }
+
+  public List<StatusEvent> getEvents() {
+    return events;
+  }
+
+  /**
+   * @return sequence number to resume from with the next poll
+   */
+  public long getLastSequence() {
+    return lastSequence;
+  }
+
+  @Override
+  public String toString() {
+    return "StatusEventBatch{" +
+            "epoch=" + epoch +
+            ", snapshot=" + (snapshot == null ? null : snapshot.size()) +
+            ", events=" + events.size() +
+            ", lastSequence=" + lastSequence +
+            '}';
+  }
+}
@@ -0,0 +1,218 @@
+package server.order;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import server.jfr.KitchenHandoffEvent;
+import server.kitchen.KitchenService;
+
+/**
+ * Hands placed orders over to the KitchenService.
+ * <p>
+ * Orders wait in a bounded queue, so a burst of orders makes
+ * {@link #dispatch(OrderInstance)} wait for room instead of piling up
+ * threads. A fixed number of workers take whatever is queued and hand it to
+ * the kitchen in one call. A hand-off that fails with a
+ * {@link RemoteException} is retried with a growing, capped backoff until
+ * the kitchen takes the orders: they are paid for already, and the kitchen
+ * drops orders it has seen, so sending them again is safe.
+ */
+public class KitchenDispatcher {
+  static final int MAX_BATCH_SIZE = 64;
+  static final long INITIAL_BACKOFF_MILLIS = 50;
+  static final long MAX_BACKOFF_MILLIS = 5000;
+  private final Logger logger;
+  private final KitchenService kitchenService;
+  private final BlockingQueue<Handoff> queue;
+  private final List<Thread> workers;
+  private final LongAdder handoffs;
+  private final LongAdder handoffNanos;
+  private final AtomicLong maxHandoffNanos;
+  private final LongAdder retries;
+
+  /**
+   * @param kitchenService the KitchenService to hand the orders to
+   * @param queueSize      maximum number of orders waiting for hand-off
+   * @param parallelism    number of hand-offs that run at the same time
+   */
+  public KitchenDispatcher(KitchenService kitchenService, int queueSize,
+                           int parallelism) {
+    this.logger = Logger.getLogger(KitchenDispatcher.class.getName());
+    this.kitchenService = kitchenService;
+    this.queue = new ArrayBlockingQueue<>(queueSize);
+    this.handoffs = new LongAdder();
+    this.handoffNanos = new LongAdder();
+    this.maxHandoffNanos = new AtomicLong();
+    this.retries = new LongAdder();
+    this.workers = new ArrayList<>();
+    for (int i = 0; i < parallelism; i++) {
+      Thread worker = new Thread(this::handOver, "kitchen-dispatcher-" + i);
+      worker.setDaemon(true);
+      worker.start();
+      workers.add(worker);
+    }
+  }
+
+  /**
+   * Queue an order for hand-off to the kitchen, waiting for room if the
+   * queue is full.
+   *
+   * @param order the order that has been placed
+   * @throws InterruptedException
+   */
+  public void dispatch(OrderInstance order) throws InterruptedException {
+    queue.put(new Handoff(order, System.nanoTime()));
+  }
+
+  /**
+   * The loop of a worker: take whatever is queued and hand it over.
+   */
+  private void handOver() {
+    List<Handoff> batch = new ArrayList<>();
+    List<OrderInstance> orders = new ArrayList<>();
+    while (true) {
+      try {
+        batch.add(queue.take());
+        queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+        for (Handoff handoff : batch) {
+          orders.add(handoff.order);
+        }
+        handOver(orders);
+        long now = System.nanoTime();
+        for (Handoff handoff : batch) {
+          long nanos = now - handoff.queuedAt;
+          handoffNanos.add(nanos);
+          maxHandoffNanos.accumulateAndGet(nanos, Math::max);
+        }
+        handoffs.add(batch.size());
+      } catch (InterruptedException e) {
+        return;
+      } finally {
+        batch.clear();
+        orders.clear();
+      }
+    }
+  }
+
+  /**
+   * Hand the orders to the kitchen, retrying until it can be reached.
+   *
+   * @throws InterruptedException
+   */
+  private void handOver(List<OrderInstance> orders)
+          throws InterruptedException {
+    KitchenHandoffEvent event = new KitchenHandoffEvent();
+    event.begin();
+    event.orders = orders.size();
+    try {
+      handOver(orders, event);
+    } finally {
+      event.commit();
+    }
+  }
+
+  private void handOver(List<OrderInstance> orders,
+                        KitchenHandoffEvent event)
+          throws InterruptedException {
+    long backoff = INITIAL_BACKOFF_MILLIS;
+    for (int attempt = 1; ; attempt++) {
+      event.attempts = attempt;
+      try {
+        kitchenService.processOrders(orders);
+        event.handedOver = true;
+        return;
+      } catch (RemoteException e) {
+        retries.increment();
+        this.logger.log(Level.WARNING, System.currentTimeMillis() +
+                ": Kitchen hand-off failed, retrying in " + backoff +
+                "ms. Refer: " + e);
+        TimeUnit.MILLISECONDS.sleep(backoff);
+        backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+      }
+    }
+  }
+
+  /**
+   * Stop the workers. Orders still queued are not handed over.
+   *
+   * @throws InterruptedException
+   */
+  public void stop() throws InterruptedException {
+    for (Thread worker : workers) {
+      worker.interrupt();
+    }
+    for (Thread worker : workers) {
+      worker.join();
+    }
+  }
+
+  /**
+   * @return number of orders waiting for hand-off
+   */
+  public int getQueueDepth() {
+    return queue.size();
+  }
+
+  /**
+   * @return number of orders handed to the kitchen
+   */
+  public long getHandoffCount() {
+    return handoffs.sum();
+  }
+
+  /**
+   * @return average time from queueing an order until the kitchen took it,
+   * in milliseconds
+   */
+  public double getAverageHandoffMillis() {
+    long count = handoffs.sum();
+    return count == 0 ? 0 : handoffNanos.sum() / 1e6 / count;
+  }
+
+  /**
+   * @return longest time from queueing an order until the kitchen took it,
+   * in milliseconds
+   */
+  public double getMaxHandoffMillis() {
+    return maxHandoffNanos.get() / 1e6;
+  }
+
+  /**
+   * @return number of hand-offs that were retried
+   */
+  public long getRetryCount() {
+    return retries.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "KitchenDispatcher{" +
+            "queueDepth=" + getQueueDepth() +
+            ", handoffs=" + getHandoffCount() +
+            ", averageHandoffMillis=" + getAverageHandoffMillis() +
+            ", maxHandoffMillis=" + getMaxHandoffMillis() +
+            ", retries=" + getRetryCount() +
+            '}';
+  }
+
+  /**
+   * An order waiting for hand-off, with the time it was queued at.
+   */
+  private static class Handoff {
+    final OrderInstance order;
+    final long queuedAt;
+
+    Handoff(OrderInstance order, long queuedAt) {
+      this.order = order;
+      this.queuedAt = queuedAt;
+    }
+  }
+}
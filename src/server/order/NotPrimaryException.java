@@ -0,0 +1,16 @@
+package server.order;
+
+import java.rmi.RemoteException;
+
+/**
+ * Thrown by a secondary OrderService that is asked to place an order while
+ * the primary is still up. Nothing was done, so the call can be made on
+ * another OrderService.
+ */
+public class NotPrimaryException extends RemoteException {
+  private static final long serialVersionUID = 1L;
+
+  public NotPrimaryException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,243 @@
+package server.order;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static shared.Constants.ITEM_NAMES;
+import static shared.Constants.ORDER_ARCHIVE_DIR;
+
+/**
+ * Order counts, revenue and item demand over a range of archived days.
+ * <p>
+ * Every day is read by its own task, a few days at a time, and each task
+ * streams the segment of its day through {@link OrderArchive#forEach}, so
+ * no more than one order per task is held at a time and memory does not
+ * grow with the number of orders. Days archived before segments existed
+ * only have a Java-serialized checkpoint, which has to be read whole; it is
+ * used if the day has no segment. This runs in a process of its own and
+ * only reads the archive, so it does not take memory from the
+ * OrderService. Today is included as of its last checkpoint.
+ * <p>
+ * Usage: {@code java server.order.OrderAnalytics <from yyyyMMdd>
+ * <to yyyyMMdd> [archive dir] [parallelism]}
+ */
+public class OrderAnalytics {
+  private final Logger logger;
+  private final String archiveDir;
+  private final OrderArchive archive;
+  private final int parallelism;
+
+  /**
+   * @param archiveDir  directory of the archived days
+   * @param parallelism number of days read at the same time
+   */
+  public OrderAnalytics(String archiveDir, int parallelism) {
+    this.logger = Logger.getLogger(OrderAnalytics.class.getName());
+    this.archiveDir = archiveDir;
+    this.archive = new OrderArchive(archiveDir);
+    this.parallelism = parallelism;
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2) {
+      throw new IllegalArgumentException("Enter the first and the last day " +
+              "as yyyyMMdd.");
+    }
+    String archiveDir = args.length > 2 ? args[2] : ORDER_ARCHIVE_DIR;
+    if (!archiveDir.endsWith(File.separator)) {
+      archiveDir += File.separator;
+    }
+    int parallelism = args.length > 3 ? Integer.parseInt(args[3]) :
+            Runtime.getRuntime().availableProcessors();
+    long start = System.nanoTime();
+    Summary summary = new OrderAnalytics(archiveDir, parallelism)
+            .summarize(args[0], args[1]);
+    System.out.print(summary);
+    System.out.printf("took_ms,%.0f%n", (System.nanoTime() - start) / 1e6);
+  }
+
+  /**
+   * @param from first day, inclusive
+   * @param to   last day, inclusive
+   * @return the summary of the orders of the days in between
+   * @throws IOException if a day could not be read
+   */
+  public Summary summarize(String from, String to) throws IOException {
+    TreeSet<String> days = new TreeSet<>(
+            archive.listDays(OrderArchive.SEGMENT_SUFFIX));
+    days.addAll(archive.listDays(""));
+    List<String> range = new ArrayList<>(days.subSet(from, true, to, true));
+    ExecutorService executor = Executors.newFixedThreadPool(
+            Math.max(1, Math.min(parallelism, range.size())));
+    try {
+      List<Future<Summary>> results = new ArrayList<>();
+      for (String dt : range) {
+        results.add(executor.submit(() -> summarizeDay(dt)));
+      }
+      Summary total = new Summary();
+      for (Future<Summary> result : results) {
+        total.add(result.get());
+      }
+      return total;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * @param dt the day
+   * @return the summary of the orders of the day
+   * @throws IOException
+   * @throws ClassNotFoundException
+   */
+  Summary summarizeDay(String dt) throws IOException,
+          ClassNotFoundException {
+    Summary summary = new Summary();
+    if (!archive.forEach(dt, summary::add)) {
+      this.logger.log(Level.INFO, System.currentTimeMillis() + ": " + dt +
+              " has no segment, reading its checkpoint.");
+      for (OrderInstance order : readLegacyCheckpoint(dt).values()) {
+        summary.add(order);
+      }
+    }
+    summary.days = 1;
+    return summary;
+  }
+
+  @SuppressWarnings("unchecked")
+  private Map<String, OrderInstance> readLegacyCheckpoint(String dt)
+          throws IOException, ClassNotFoundException {
+    try (ObjectInputStream s = new ObjectInputStream(new BufferedInputStream(
+            new FileInputStream(archiveDir + dt)))) {
+      return (Map<String, OrderInstance>) s.readObject();
+    }
+  }
+
+  /**
+   * Aggregates of a set of orders. Its size depends on the menu, not on
+   * the number of orders.
+   */
+  public static class Summary {
+    private static final OrderStatus[] STATUSES = OrderStatus.values();
+    int days;
+    long orders;
+    double revenue;
+    final long[] ordersByStatus = new long[STATUSES.length];
+    // per index of ITEM_NAMES
+    final long[] itemQuantities = new long[ITEM_NAMES.size()];
+    final long[] itemOrders = new long[ITEM_NAMES.size()];
+    // items that are not on the menu, which should be rare
+    final Map<String, Long> otherItemQuantities = new HashMap<>();
+
+    void add(OrderInstance order) {
+      orders++;
+      revenue += order.getAmount();
+      if (order.getOrderStatus() != null) {
+        ordersByStatus[order.getOrderStatus().ordinal()]++;
+      }
+      if (order.getItems() == null) {
+        return;
+      }
+      for (Map.Entry<String, Integer> item : order.getItems().entrySet()) {
+        int index = ITEM_NAMES.indexOf(item.getKey());
+        if (index < 0) {
+          otherItemQuantities.merge(item.getKey(), (long) item.getValue(),
+                  Long::sum);
+        } else if (item.getValue() > 0) {
+          itemQuantities[index] += item.getValue();
+          itemOrders[index]++;
+        }
+      }
+    }
+
+    void add(Summary other) {
+      days += other.days;
+      orders += other.orders;
+      revenue += other.revenue;
+      for (int i = 0; i < ordersByStatus.length; i++) {
+        ordersByStatus[i] += other.ordersByStatus[i];
+      }
+      for (int i = 0; i < itemQuantities.length; i++) {
+        itemQuantities[i] += other.itemQuantities[i];
+        itemOrders[i] += other.itemOrders[i];
+      }
+      other.otherItemQuantities.forEach((item, quantity) ->
+              otherItemQuantities.merge(item, quantity, Long::sum));
+    }
+
+    public int getDays() {
+      return days;
+    }
+
+    public long getOrders() {
+      return orders;
+    }
+
+    public double getRevenue() {
+      return revenue;
+    }
+
+    public long getOrders(OrderStatus status) {
+      return ordersByStatus[status.ordinal()];
+    }
+
+    /**
+     * @param item name of the item
+     * @return total quantity of the item ordered
+     */
+    public long getItemQuantity(String item) {
+      int index = ITEM_NAMES.indexOf(item);
+      return index < 0 ? otherItemQuantities.getOrDefault(item, 0L) :
+              itemQuantities[index];
+    }
+
+    /**
+     * @return the summary as {@code metric,value} lines
+     */
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder();
+      sb.append("days,").append(days).append('\n');
+      sb.append("orders,").append(orders).append('\n');
+      sb.append(String.format("revenue,%.2f%n", revenue));
+      sb.append(String.format("average_order,%.2f%n",
+              orders == 0 ? 0 : revenue / orders));
+      for (OrderStatus status : STATUSES) {
+        sb.append("orders_").append(status.name().toLowerCase()).append(',')
+                .append(ordersByStatus[status.ordinal()]).append('\n');
+      }
+      for (int i = 0; i < itemQuantities.length; i++) {
+        sb.append("item_quantity[").append(ITEM_NAMES.get(i)).append("],")
+                .append(itemQuantities[i]).append('\n');
+        sb.append("item_orders[").append(ITEM_NAMES.get(i)).append("],")
+                .append(itemOrders[i]).append('\n');
+      }
+      otherItemQuantities.forEach((item, quantity) ->
+              sb.append("item_quantity[").append(item).append("],")
+                      .append(quantity).append('\n'));
+      return sb.toString();
+    }
+  }
+}
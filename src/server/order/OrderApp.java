@@ -1,5 +1,6 @@
 package server.order;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
@@ -9,6 +10,9 @@ import java.rmi.registry.Registry;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import shared.metrics.Instrumentation;
+
+import static shared.Constants.ORDER_ARCHIVE_DIR;
 import static shared.Constants.ORDER_SERVICE_NAME;
 
 /**
@@ -17,12 +21,19 @@ import static shared.Constants.ORDER_SERVICE_NAME;
  * @author Anshul Rao <rao.ans@northeastern.edu>
  */
 public class OrderApp {
+  static final String SECONDARY = "secondary";
   Logger logger;
 
-  public OrderApp(int port) {
+  /**
+   * @param port        port of this OrderService
+   * @param primaryHost hostname of the primary if this is a secondary,
+   *                    else null
+   * @param primaryPort port of the primary if this is a secondary
+   */
+  public OrderApp(int port, String primaryHost, int primaryPort) {
     this.logger = Logger.getLogger(OrderApp.class.getName());
     try {
-      startServer(port);
+      startServer(port, primaryHost, primaryPort);
     } catch (Exception e) {
       StringWriter sw = new StringWriter();
       e.printStackTrace(new PrintWriter(sw));
@@ -43,18 +54,45 @@ public class OrderApp {
     } catch (Exception e) {
       throw new IllegalArgumentException("Port numbers should be an integer.");
     }
-    new OrderApp(port);
+    // the service is primary unless started as a secondary of another one
+    if (args.length < 2 || !args[1].equalsIgnoreCase(SECONDARY)) {
+      new OrderApp(port, null, 0);
+      return;
+    }
+    if (args.length < 4) {
+      throw new IllegalArgumentException("Enter hostname and port number " +
+              "of the primary.");
+    }
+    int primaryPort;
+    try {
+      primaryPort = Integer.parseInt(args[3]);
+    } catch (Exception e) {
+      throw new IllegalArgumentException("Port numbers should be an integer.");
+    }
+    new OrderApp(port, args[2], primaryPort);
   }
 
-  private void startServer(int port) throws IOException, NotBoundException,
-          ClassNotFoundException {
-    System.setProperty("java.rmi.server.logCalls", "true");
+  private void startServer(int port, String primaryHost, int primaryPort)
+          throws IOException, NotBoundException, ClassNotFoundException {
     System.setProperty("java.rmi.server.hostname", "127.0.0.1");
     Registry registry = LocateRegistry.createRegistry(port);
-    OrderServiceImpl orderService =
-            new OrderServiceImpl();
-    registry.rebind(ORDER_SERVICE_NAME, orderService);
+    OrderServiceImpl orderService;
+    if (primaryHost == null) {
+      orderService = new OrderServiceImpl();
+    } else {
+      // a secondary writes to an archive of its own once it takes over,
+      // never to that of the primary
+      String archiveDir = ORDER_ARCHIVE_DIR + "replica-" + port +
+              File.separator;
+      new File(archiveDir).mkdirs();
+      orderService = new OrderServiceImpl(primaryHost, primaryPort,
+              archiveDir);
+    }
+    // clients call the service through a wrapper that measures every call
+    registry.rebind(ORDER_SERVICE_NAME,
+            Instrumentation.instrument(orderService, ORDER_SERVICE_NAME));
     this.logger.log(Level.INFO, System.currentTimeMillis() +
-            ": OrderService started at port " + port + ".");
+            ": " + (primaryHost == null ? "Primary" : "Secondary") +
+            " OrderService started at port " + port + ".");
   }
 }
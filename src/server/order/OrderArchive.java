@@ -0,0 +1,399 @@
+package server.order;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Archive of the orders of past days, one segment per day.
+ * <p>
+ * A segment, {@code yyyyMMdd.segment}, holds the orders of a day encoded
+ * by {@link OrderCodec}, each as {@code [int length][encoded order]} after
+ * a header of {@code [int magic][byte version][long generation][int count]}.
+ * Next to it, {@code yyyyMMdd.index} is an open-addressing hash table from
+ * order id to the offset of its record, laid out as
+ * {@code [int magic][byte version][long generation][int capacity][int count]}
+ * followed by {@code capacity} slots of {@code [long key][long offset]}.
+ * Both files are memory-mapped when a day is first looked up, so finding an
+ * order costs one probe of the index and one read of the record, no matter
+ * how many orders the day had. An order is archived on the day it was
+ * placed and, while it is not done, on the days after, so only the days
+ * from the one its id carries on are looked at. Segments are written once to a temporary
+ * file and moved in place; an index that does not carry the generation of
+ * its segment is rebuilt from the segment.
+ * <p>
+ * The checkpoints of the {@link OrderJournal} are segments too, so the
+ * last checkpoint of a day is its segment.
+ */
+public class OrderArchive {
+  static final String SEGMENT_SUFFIX = ".segment";
+  static final String INDEX_SUFFIX = ".index";
+  static final String TMP_SUFFIX = ".tmp";
+  static final int SEGMENT_MAGIC = 0x4F534547;  // "OSEG"
+  static final int INDEX_MAGIC = 0x4F494458;  // "OIDX"
+  static final byte VERSION = 1;
+  static final int SEGMENT_HEADER_BYTES = Integer.BYTES + 1 + Long.BYTES +
+          Integer.BYTES;
+  static final int INDEX_HEADER_BYTES = Integer.BYTES + 1 + Long.BYTES +
+          Integer.BYTES * 2;
+  static final int SLOT_BYTES = Long.BYTES * 2;
+  // days are named yyyyMMdd
+  static final Pattern DAY = Pattern.compile("\\d{8}");
+  private final Logger logger;
+  private final String archiveDir;
+  // the archived days, newest first
+  private final ConcurrentSkipListMap<String, Segment> days;
+
+  /**
+   * @param archiveDir directory of the segment and index files
+   */
+  public OrderArchive(String archiveDir) {
+    this.logger = Logger.getLogger(OrderArchive.class.getName());
+    this.archiveDir = archiveDir;
+    this.days = new ConcurrentSkipListMap<>(Comparator.reverseOrder());
+  }
+
+  File segmentFile(String dt) {
+    return new File(archiveDir + dt + SEGMENT_SUFFIX);
+  }
+
+  File indexFile(String dt) {
+    return new File(archiveDir + dt + INDEX_SUFFIX);
+  }
+
+  /**
+   * Register the days before the given one that have a segment. They are
+   * only mapped once an order is looked up in them.
+   *
+   * @param today the day being journaled, which is not part of the archive
+   */
+  public void open(String today) {
+    for (String dt : listDays(SEGMENT_SUFFIX)) {
+      if (dt.compareTo(today) < 0) {
+        days.putIfAbsent(dt, new Segment(dt));
+      }
+    }
+  }
+
+  /**
+   * Add a day whose segment has been written for the last time.
+   *
+   * @param dt the day
+   */
+  public void seal(String dt) {
+    days.put(dt, new Segment(dt));
+  }
+
+  /**
+   * @param suffix file name suffix
+   * @return the days that have a file with the given suffix
+   */
+  List<String> listDays(String suffix) {
+    List<String> result = new ArrayList<>();
+    String[] names = new File(archiveDir).list();
+    if (names == null) {
+      return result;
+    }
+    for (String name : names) {
+      if (name.endsWith(suffix)) {
+        String dt = name.substring(0, name.length() - suffix.length());
+        if (DAY.matcher(dt).matches()) {
+          result.add(dt);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Find an order in the archive, newest day first, down to the day it was
+   * placed on. Orders whose id does not carry that day are looked for in
+   * every day.
+   *
+   * @param orderID the order id
+   * @return the order as last archived, null if it is not archived
+   */
+  public OrderInstance find(String orderID) {
+    String placedDay = OrderInstance.placedDay(orderID);
+    for (Segment segment : days.values()) {
+      if (placedDay != null && segment.dt.compareTo(placedDay) < 0) {
+        break;
+      }
+      try {
+        OrderInstance order = segment.find(orderID);
+        if (order != null) {
+          return order;
+        }
+      } catch (IOException e) {
+        this.logger.log(Level.WARNING, System.currentTimeMillis() +
+                ": Segment " + segment.dt + " could not be read. Refer: " +
+                e);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Write the segment and the index of a day. The orders may change while
+   * they are written, the count in the header is that of the orders
+   * actually written.
+   *
+   * @param dt         the day
+   * @param generation generation of the data, see {@link OrderJournal}
+   * @param orders     the orders of the day
+   * @throws IOException
+   */
+  public void write(String dt, long generation,
+                    Collection<OrderInstance> orders) throws IOException {
+    List<String> ids = new ArrayList<>();
+    List<Long> offsets = new ArrayList<>();
+    File tmp = new File(archiveDir + dt + SEGMENT_SUFFIX + TMP_SUFFIX);
+    try (FileOutputStream fos = new FileOutputStream(tmp)) {
+      DataOutputStream out = new DataOutputStream(
+              new BufferedOutputStream(fos, 1 << 16));
+      out.writeInt(SEGMENT_MAGIC);
+      out.writeByte(VERSION);
+      out.writeLong(generation);
+      out.writeInt(0);  // the count, known once the orders are written
+      long offset = SEGMENT_HEADER_BYTES;
+      ByteArrayOutputStream record = new ByteArrayOutputStream(128);
+      DataOutputStream recordOut = new DataOutputStream(record);
+      for (OrderInstance order : orders) {
+        record.reset();
+        OrderCodec.encodeOrder(order, recordOut);
+        out.writeInt(record.size());
+        record.writeTo(out);
+        ids.add(order.getOrderID());
+        offsets.add(offset);
+        offset += Integer.BYTES + record.size();
+      }
+      out.flush();
+      ByteBuffer count = ByteBuffer.allocate(Integer.BYTES);
+      count.putInt(0, ids.size());
+      fos.getChannel().write(count, SEGMENT_HEADER_BYTES - Integer.BYTES);
+      fos.getFD().sync();
+    }
+    writeIndex(dt, generation, ids, offsets);
+    Files.move(tmp.toPath(), segmentFile(dt).toPath(),
+            StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private void writeIndex(String dt, long generation, List<String> ids,
+                          List<Long> offsets) throws IOException {
+    int capacity = Integer.highestOneBit(Math.max(4, ids.size() * 2) - 1) << 1;
+    ByteBuffer slots = ByteBuffer.allocate(capacity * SLOT_BYTES);
+    for (int i = 0; i < ids.size(); i++) {
+      long key = key(ids.get(i));
+      int slot = slot(key, capacity);
+      while (slots.getLong(slot * SLOT_BYTES + Long.BYTES) != 0) {
+        slot = (slot + 1) & (capacity - 1);
+      }
+      slots.putLong(slot * SLOT_BYTES, key);
+      slots.putLong(slot * SLOT_BYTES + Long.BYTES, offsets.get(i));
+    }
+    File tmp = new File(archiveDir + dt + INDEX_SUFFIX + TMP_SUFFIX);
+    try (FileOutputStream fos = new FileOutputStream(tmp)) {
+      DataOutputStream out = new DataOutputStream(
+              new BufferedOutputStream(fos, 1 << 16));
+      out.writeInt(INDEX_MAGIC);
+      out.writeByte(VERSION);
+      out.writeLong(generation);
+      out.writeInt(capacity);
+      out.writeInt(ids.size());
+      out.write(slots.array());
+      out.flush();
+      fos.getFD().sync();
+    }
+    Files.move(tmp.toPath(), indexFile(dt).toPath(),
+            StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Read all orders of a day.
+   *
+   * @param dt     the day
+   * @param target map the orders are put into
+   * @return generation of the segment, -1 if the day has none
+   * @throws IOException
+   */
+  public long readAll(String dt, Map<String, OrderInstance> target)
+          throws IOException {
+    return scan(dt, order -> target.put(order.getOrderID(), order));
+  }
+
+  /**
+   * Read the orders of a day one at a time, in the order they were written.
+   * No order is kept, so this runs in constant memory however large the
+   * day is.
+   *
+   * @param dt     the day
+   * @param action what is done with every order
+   * @return false if the day has no segment
+   * @throws IOException
+   */
+  public boolean forEach(String dt, Consumer<OrderInstance> action)
+          throws IOException {
+    return scan(dt, action) >= 0;
+  }
+
+  private long scan(String dt, Consumer<OrderInstance> action)
+          throws IOException {
+    File file = segmentFile(dt);
+    if (!file.exists()) {
+      return -1;
+    }
+    ByteBuffer buffer = map(file);
+    long generation = checkSegmentHeader(buffer, file);
+    int count = buffer.getInt(SEGMENT_HEADER_BYTES - Integer.BYTES);
+    int offset = SEGMENT_HEADER_BYTES;
+    for (int i = 0; i < count; i++) {
+      action.accept(readRecord(buffer, offset));
+      offset += Integer.BYTES + buffer.getInt(offset);
+    }
+    return generation;
+  }
+
+  private static MappedByteBuffer map(File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(),
+            StandardOpenOption.READ)) {
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+  }
+
+  private static long checkSegmentHeader(ByteBuffer buffer, File file)
+          throws IOException {
+    if (buffer.limit() < SEGMENT_HEADER_BYTES ||
+            buffer.getInt(0) != SEGMENT_MAGIC ||
+            buffer.get(Integer.BYTES) != VERSION) {
+      throw new IOException("Not a segment of this version: " + file);
+    }
+    return buffer.getLong(Integer.BYTES + 1);
+  }
+
+  private static OrderInstance readRecord(ByteBuffer buffer, int offset)
+          throws IOException {
+    byte[] bytes = new byte[buffer.getInt(offset)];
+    buffer.get(offset + Integer.BYTES, bytes);
+    return OrderCodec.decodeOrder(
+            new DataInputStream(new ByteArrayInputStream(bytes)));
+  }
+
+  /**
+   * Numeric ids are their own key, other ids are hashed into the negative
+   * range. Keys are never 0, which marks an empty slot.
+   */
+  static long key(String orderID) {
+    long numeric = OrderCodec.numericID(orderID);
+    if (numeric > 0) {
+      return numeric;
+    }
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < orderID.length(); i++) {
+      hash = (hash ^ orderID.charAt(i)) * 0x100000001b3L;
+    }
+    return hash | Long.MIN_VALUE;
+  }
+
+  private static int slot(long key, int capacity) {
+    long mixed = key * 0x9E3779B97F4A7C15L;
+    return (int) (mixed ^ (mixed >>> 32)) & (capacity - 1);
+  }
+
+  /**
+   * The mapped files of one day.
+   */
+  class Segment {
+    final String dt;
+    private volatile ByteBuffer segment;
+    private volatile ByteBuffer index;
+
+    Segment(String dt) {
+      this.dt = dt;
+    }
+
+    OrderInstance find(String orderID) throws IOException {
+      if (index == null) {
+        load();
+      }
+      ByteBuffer idx = index;
+      ByteBuffer seg = segment;
+      int capacity = idx.getInt(INDEX_HEADER_BYTES - Integer.BYTES * 2);
+      long key = key(orderID);
+      int slot = slot(key, capacity);
+      for (int probes = 0; probes < capacity; probes++) {
+        int position = INDEX_HEADER_BYTES + slot * SLOT_BYTES;
+        long offset = idx.getLong(position + Long.BYTES);
+        if (offset == 0) {
+          return null;
+        }
+        if (idx.getLong(position) == key) {
+          OrderInstance order = readRecord(seg, (int) offset);
+          // hashed keys may collide, numeric ones do not
+          if (key > 0 || order.getOrderID().equals(orderID)) {
+            return order;
+          }
+        }
+        slot = (slot + 1) & (capacity - 1);
+      }
+      return null;
+    }
+
+    private synchronized void load() throws IOException {
+      if (index != null) {
+        return;
+      }
+      File segmentFile = segmentFile(dt);
+      ByteBuffer seg = map(segmentFile);
+      long generation = checkSegmentHeader(seg, segmentFile);
+      File indexFile = indexFile(dt);
+      ByteBuffer idx = indexFile.exists() ? map(indexFile) : null;
+      if (idx == null || idx.limit() < INDEX_HEADER_BYTES ||
+              idx.getInt(0) != INDEX_MAGIC || idx.get(Integer.BYTES) !=
+              VERSION || idx.getLong(Integer.BYTES + 1) != generation) {
+        logger.log(Level.WARNING, System.currentTimeMillis() +
+                ": Rebuilding the index of " + dt + ".");
+        rebuildIndex(seg, generation);
+        idx = map(indexFile);
+      }
+      segment = seg;
+      index = idx;
+    }
+
+    private void rebuildIndex(ByteBuffer seg, long generation)
+            throws IOException {
+      int count = seg.getInt(SEGMENT_HEADER_BYTES - Integer.BYTES);
+      List<String> ids = new ArrayList<>(count);
+      List<Long> offsets = new ArrayList<>(count);
+      int offset = SEGMENT_HEADER_BYTES;
+      for (int i = 0; i < count; i++) {
+        ids.add(readRecord(seg, offset).getOrderID());
+        offsets.add((long) offset);
+        offset += Integer.BYTES + seg.getInt(offset);
+      }
+      writeIndex(dt, generation, ids, offsets);
+    }
+  }
+}
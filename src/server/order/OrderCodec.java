@@ -0,0 +1,355 @@
+package server.order;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectStreamConstants;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of {@link OrderInstance} and {@link OrderEvent}.
+ * <p>
+ * An order is written as
+ * {@code [version][flags][id][status][name][amount][contact][items]}
+ * followed by the time it was placed and the id of the request that placed
+ * it, each if known. The id is a long if it is numeric
+ * ({@code O-<number>}) and a string otherwise. The items are a count per
+ * index of the item table of the version, -1 for an item that is not part
+ * of the order, followed by any item that is not on the table by name.
+ * <p>
+ * Every encoding starts with a version byte, so that a later layout can
+ * still read this one. The item table of a version is frozen with it, so
+ * an order reads back the same whatever the menu is by then; a change of
+ * the menu comes with a new version and table. Version 1 used the same
+ * layout with its own table, version 2 wrote the name and count of every
+ * item instead; both are still read.
+ * <p>
+ * Java serialization of an order goes through {@link CompactOrder}, so
+ * orders sent over RMI use this encoding too. Journal records written
+ * before this encoding are Java-serialized events; {@link #decodeEvent}
+ * recognizes them by the stream magic and reads them as before.
+ */
+public final class OrderCodec {
+  static final byte VERSION = 3;
+  // the layouts that are still read
+  static final byte VERSION_1 = 1;
+  static final byte VERSION_2 = 2;
+  // the menu version 1 was written with, which its indexes refer to
+  private static final List<String> VERSION_1_ITEM_NAMES =
+          List.of("Burger", "Fries", "Pasta", "Pizza");
+  // the menu version 3 is written with, which its indexes refer to
+  private static final List<String> VERSION_3_ITEM_NAMES =
+          List.of("Burger", "Fries", "Pasta", "Pizza");
+  // the id is written as a long
+  private static final int NUMERIC_ID = 1;
+  // items that are not on the item table follow by name
+  private static final int EXTRA_ITEMS = 2;
+  // the time the order was placed follows the items
+  private static final int PLACED_AT = 4;
+  // the id of the request that placed the order follows
+  private static final int REQUEST_ID = 8;
+  private static final String ID_PREFIX = "O-";
+  private static final OrderStatus[] STATUSES = OrderStatus.values();
+  private static final OrderEvent.Type[] TYPES = OrderEvent.Type.values();
+
+  private OrderCodec() {
+  }
+
+  /**
+   * Write an order.
+   *
+   * @param order the order
+   * @param out   where it is written to
+   * @throws IOException
+   */
+  public static void encodeOrder(OrderInstance order, DataOutput out)
+          throws IOException {
+    long numericID = numericID(order.orderID);
+    HashMap<String, Integer> items = order.items == null ?
+            new HashMap<>() : order.items;
+    int extras = 0;
+    for (String item : items.keySet()) {
+      if (!VERSION_3_ITEM_NAMES.contains(item)) {
+        extras++;
+      }
+    }
+    out.writeByte(VERSION);
+    out.writeByte((numericID >= 0 ? NUMERIC_ID : 0) |
+            (extras > 0 ? EXTRA_ITEMS : 0) |
+            (order.placedAt != 0 ? PLACED_AT : 0) |
+            (order.requestID != null ? REQUEST_ID : 0));
+    if (numericID >= 0) {
+      out.writeLong(numericID);
+    } else {
+      out.writeUTF(order.orderID);
+    }
+    writeStatus(order.orderStatus, out);
+    out.writeUTF(order.name == null ? "" : order.name);
+    out.writeDouble(order.amount);
+    out.writeLong(order.userContact);
+    out.writeByte(VERSION_3_ITEM_NAMES.size());
+    for (String item : VERSION_3_ITEM_NAMES) {
+      Integer count = items.get(item);
+      out.writeInt(count == null ? -1 : count);
+    }
+    if (extras > 0) {
+      out.writeShort(extras);
+      for (Map.Entry<String, Integer> entry : items.entrySet()) {
+        if (!VERSION_3_ITEM_NAMES.contains(entry.getKey())) {
+          out.writeUTF(entry.getKey());
+          out.writeInt(entry.getValue());
+        }
+      }
+    }
+    if (order.placedAt != 0) {
+      out.writeLong(order.placedAt);
+    }
+    if (order.requestID != null) {
+      out.writeUTF(order.requestID);
+    }
+  }
+
+  /**
+   * Read an order written by {@link #encodeOrder}.
+   *
+   * @param in where it is read from
+   * @return the order
+   * @throws IOException
+   */
+  public static OrderInstance decodeOrder(DataInput in) throws IOException {
+    byte version = in.readByte();
+    checkVersion(version);
+    int flags = in.readByte();
+    String orderID = (flags & NUMERIC_ID) != 0 ?
+            ID_PREFIX + in.readLong() : in.readUTF();
+    OrderStatus status = readStatus(in);
+    String name = in.readUTF();
+    double amount = in.readDouble();
+    long contact = in.readLong();
+    HashMap<String, Integer> items = version == VERSION_2 ?
+            readVersion2Items(in) :
+            readItems(version == VERSION_1 ? VERSION_1_ITEM_NAMES :
+                    VERSION_3_ITEM_NAMES, flags, in);
+    OrderInstance order = new OrderInstance(orderID, amount, name, contact,
+            items, status);
+    if ((flags & PLACED_AT) != 0) {
+      order.placedAt = in.readLong();
+    }
+    if ((flags & REQUEST_ID) != 0) {
+      order.requestID = in.readUTF();
+    }
+    return order;
+  }
+
+  /**
+   * Read the items written as a count per index of the given item table.
+   */
+  private static HashMap<String, Integer> readItems(List<String> itemNames,
+                                                    int flags, DataInput in)
+          throws IOException {
+    int itemCount = in.readByte();
+    if (itemCount < 0 || itemCount > itemNames.size()) {
+      throw new InvalidObjectException("Unknown number of items " +
+              itemCount + ".");
+    }
+    HashMap<String, Integer> items = new HashMap<>();
+    for (int i = 0; i < itemCount; i++) {
+      int count = in.readInt();
+      if (count >= 0) {
+        items.put(itemNames.get(i), count);
+      }
+    }
+    if ((flags & EXTRA_ITEMS) != 0) {
+      int extras = in.readShort();
+      for (int i = 0; i < extras; i++) {
+        items.put(in.readUTF(), in.readInt());
+      }
+    }
+    return items;
+  }
+
+  private static HashMap<String, Integer> readVersion2Items(DataInput in)
+          throws IOException {
+    int itemCount = in.readShort();
+    HashMap<String, Integer> items = new HashMap<>();
+    for (int i = 0; i < itemCount; i++) {
+      items.put(in.readUTF(), in.readInt());
+    }
+    return items;
+  }
+
+  /**
+   * Write an event as {@code [version][type][sequence][generation]}
+   * followed by the order of a {@code PLACED} event or the id and status of
+   * a {@code STATUS_CHANGED} event.
+   *
+   * @param event the event
+   * @param out   where it is written to
+   * @throws IOException
+   */
+  public static void encodeEvent(OrderEvent event, DataOutput out)
+          throws IOException {
+    out.writeByte(VERSION);
+    out.writeByte(event.type.ordinal());
+    out.writeLong(event.sequence);
+    out.writeLong(event.generation);
+    if (event.type == OrderEvent.Type.PLACED) {
+      encodeOrder(event.order, out);
+    } else if (event.type == OrderEvent.Type.STATUS_CHANGED) {
+      out.writeUTF(event.orderID);
+      writeStatus(event.status, out);
+    }
+  }
+
+  /**
+   * Read an event written by {@link #encodeEvent}.
+   *
+   * @param in where it is read from
+   * @return the event
+   * @throws IOException
+   */
+  public static OrderEvent decodeEvent(DataInput in) throws IOException {
+    checkVersion(in.readByte());
+    int type = in.readByte();
+    if (type < 0 || type >= TYPES.length) {
+      throw new InvalidObjectException("Unknown event type " + type + ".");
+    }
+    long sequence = in.readLong();
+    long generation = in.readLong();
+    switch (TYPES[type]) {
+      case PLACED:
+        OrderInstance order = decodeOrder(in);
+        return new OrderEvent(OrderEvent.Type.PLACED, order.getOrderID(),
+                order, order.getOrderStatus(), generation, sequence);
+      case STATUS_CHANGED:
+        String orderID = in.readUTF();
+        return new OrderEvent(OrderEvent.Type.STATUS_CHANGED, orderID, null,
+                readStatus(in), generation, sequence);
+      default:
+        return new OrderEvent(OrderEvent.Type.CHECKPOINT, null, null, null,
+                generation, sequence);
+    }
+  }
+
+  /**
+   * @param event the event
+   * @return the encoded event
+   * @throws IOException
+   */
+  public static byte[] encodeEvent(OrderEvent event) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+    encodeEvent(event, new DataOutputStream(bytes));
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Read an encoded event, or a Java-serialized one as written before this
+   * encoding existed.
+   *
+   * @param payload the encoded event
+   * @return the event
+   * @throws IOException
+   * @throws ClassNotFoundException
+   */
+  public static OrderEvent decodeEvent(byte[] payload) throws IOException,
+          ClassNotFoundException {
+    if (isJavaSerialized(payload)) {
+      try (ObjectInputStream s =
+                   new ObjectInputStream(new ByteArrayInputStream(payload))) {
+        return (OrderEvent) s.readObject();
+      }
+    }
+    return decodeEvent(new DataInputStream(new ByteArrayInputStream(payload)));
+  }
+
+  private static boolean isJavaSerialized(byte[] payload) {
+    return payload.length >= 2 &&
+            (short) (((payload[0] & 0xFF) << 8) | (payload[1] & 0xFF)) ==
+                    ObjectStreamConstants.STREAM_MAGIC;
+  }
+
+  /**
+   * @return the number in an id of the form {@code O-<number>}, -1 if the
+   * id has another form
+   */
+  static long numericID(String orderID) {
+    if (orderID == null || !orderID.startsWith(ID_PREFIX) ||
+            orderID.length() == ID_PREFIX.length() ||
+            orderID.length() > ID_PREFIX.length() + 18) {
+      return -1;
+    }
+    long value = 0;
+    for (int i = ID_PREFIX.length(); i < orderID.length(); i++) {
+      char c = orderID.charAt(i);
+      if (c < '0' || c > '9' ||
+              (c == '0' && i == ID_PREFIX.length() && orderID.length() > 3)) {
+        return -1;
+      }
+      value = value * 10 + (c - '0');
+    }
+    return value;
+  }
+
+  private static void checkVersion(byte version) throws IOException {
+    // the layout of an event is the same in all versions
+    if (version != VERSION && version != VERSION_1 && version != VERSION_2) {
+      throw new InvalidObjectException("Unsupported encoding version " +
+              version + ".");
+    }
+  }
+
+  private static void writeStatus(OrderStatus status, DataOutput out)
+          throws IOException {
+    out.writeByte(status == null ? -1 : status.ordinal());
+  }
+
+  private static OrderStatus readStatus(DataInput in) throws IOException {
+    int ordinal = in.readByte();
+    if (ordinal >= STATUSES.length) {
+      throw new InvalidObjectException("Unknown order status " + ordinal +
+              ".");
+    }
+    return ordinal < 0 ? null : STATUSES[ordinal];
+  }
+
+  /**
+   * Serialized form of an {@link OrderInstance}, see
+   * {@link OrderInstance#writeReplace()}.
+   */
+  public static final class CompactOrder implements Externalizable {
+    private static final long serialVersionUID = 1L;
+    private OrderInstance order;
+
+    public CompactOrder() {
+    }
+
+    CompactOrder(OrderInstance order) {
+      this.order = order;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+      encodeOrder(order, out);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+      order = decodeOrder(in);
+    }
+
+    private Object readResolve() {
+      return order;
+    }
+  }
+}
@@ -0,0 +1,128 @@
+package server.order;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * A single change to the order data, i.e., either a new order was placed or
+ * the status of an existing order changed. These events are appended to the
+ * {@link OrderJournal} and replayed on recovery, and streamed to the
+ * secondaries in the order of their sequence numbers. A {@code CHECKPOINT}
+ * event carries no change and only marks the start or the end of a journal
+ * generation.
+ */
+public class OrderEvent implements Serializable {
+  private static final long serialVersionUID = 1L;
+  final Type type;
+  final String orderID;
+  final OrderInstance order;
+  final OrderStatus status;
+  final long generation;
+  // assigned by the Replicator once the event is published, -1 until then
+  final long sequence;
+
+  OrderEvent(Type type, String orderID, OrderInstance order,
+             OrderStatus status, long generation, long sequence) {
+    this.type = type;
+    this.orderID = orderID;
+    this.order = order;
+    this.status = status;
+    this.generation = generation;
+    this.sequence = sequence;
+  }
+
+  /**
+   * Create an event for a newly placed order.
+   *
+   * @param order the order that has been placed
+   * @return the event
+   */
+  public static OrderEvent placed(OrderInstance order) {
+    return new OrderEvent(Type.PLACED, order.getOrderID(), order,
+            order.getOrderStatus(), 0, -1);
+  }
+
+  /**
+   * Create an event for a status change of an existing order.
+   *
+   * @param orderID id of the order whose status changed
+   * @param status  the new status
+   * @return the event
+   */
+  public static OrderEvent statusChanged(String orderID, OrderStatus status) {
+    return new OrderEvent(Type.STATUS_CHANGED, orderID, null, status, 0, -1);
+  }
+
+  /**
+   * Create the marker written at the start of the journal that follows
+   * checkpoint {@code generation} and at the end of the journal that was
+   * compacted into it.
+   *
+   * @param generation the generation of the checkpoint
+   * @return the event
+   */
+  static OrderEvent checkpoint(long generation) {
+    return new OrderEvent(Type.CHECKPOINT, null, null, null, generation, -1);
+  }
+
+  /**
+   * Get a copy of this event with the given sequence number.
+   *
+   * @param sequence the sequence number
+   * @return the sequenced event
+   */
+  OrderEvent sequenced(long sequence) {
+    return new OrderEvent(type, orderID, order, status, generation, sequence);
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public String getOrderID() {
+    return orderID;
+  }
+
+  public OrderStatus getStatus() {
+    return status;
+  }
+
+  public long getGeneration() {
+    return generation;
+  }
+
+  public long getSequence() {
+    return sequence;
+  }
+
+  /**
+   * Apply this event to the given order data. Applying the same event more
+   * than once leaves the data unchanged, which makes replay safe.
+   *
+   * @param orderData map of order id to order
+   */
+  void apply(Map<String, OrderInstance> orderData) {
+    if (type == Type.PLACED) {
+      orderData.put(orderID, order);
+    } else if (type == Type.STATUS_CHANGED) {
+      OrderInstance instance = orderData.get(orderID);
+      if (instance != null) {
+        instance.setOrderStatus(status);
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "OrderEvent{" +
+            "sequence=" + sequence +
+            ", type=" + type +
+            ", orderID='" + orderID + '\'' +
+            ", status=" + status +
+            '}';
+  }
+
+  public enum Type {
+    PLACED, STATUS_CHANGED, CHECKPOINT
+  }
+}
@@ -1,8 +1,9 @@
 package server.order;
 
 import java.io.Serializable;
+import java.time.LocalDateTime;
 import java.util.HashMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * An instance of order that has the ID, status, user's name and contact,
@@ -11,19 +12,43 @@ import java.util.concurrent.atomic.AtomicInteger;
  * @author Anshul Rao <rao.ans@northeastern.edu>
  */
 public class OrderInstance implements Serializable {
-  static AtomicInteger counter = new AtomicInteger();
+  // the value computed for the original default serialized form, kept so
+  // that archives written with it can still be read
+  private static final long serialVersionUID = 7480948421617473379L;
+  // ids are numeric, the day the order was placed followed by a sequence
+  // that starts from the time of day so that ids do not repeat across
+  // restarts
+  static AtomicLong counter = new AtomicLong();
+  // the day is the part of an id above this factor, yyyyMMdd
+  static final long DAY_FACTOR = 10_000_000_000L;
+  // ids are at least this large since the day was added, older ids are the
+  // startup time in microseconds and smaller
+  static final long FIRST_DAY_ID = 10000101 * DAY_FACTOR;
+  // number of ids a millisecond of the day reserves, more are taken from
+  // the next millisecond
+  static final long IDS_PER_MILLI = 100;
   String orderID;
   OrderStatus orderStatus;
   String name;
   double amount;
   HashMap<String, Integer> items;
   long userContact;
+  // when the order was placed, in milliseconds since the epoch; 0 for the
+  // orders archived before it was recorded
+  long placedAt;
+  // the id the client sent along to place the order, null if it sent none
+  String requestID;
 
   public OrderInstance(double amount, String name, long userContact,
                        HashMap<String,
                                Integer> items, OrderStatus status) {
-    this.orderID = "O-" + counter.incrementAndGet() + "" +
-            System.currentTimeMillis();
+    this(nextID(), amount, name, userContact, items, status);
+    this.placedAt = System.currentTimeMillis();
+  }
+
+  OrderInstance(String orderID, double amount, String name, long userContact,
+                HashMap<String, Integer> items, OrderStatus status) {
+    this.orderID = orderID;
     this.orderStatus = status;
     this.name = name;
     this.userContact = userContact;
@@ -37,6 +62,40 @@ public class OrderInstance implements Serializable {
     this(amount, name, userContact, items, OrderStatus.PLACED);
   }
 
+  /**
+   * @return a new id of the form {@code O-<yyyyMMdd><sequence>}, the day
+   * being today
+   */
+  static String nextID() {
+    LocalDateTime now = LocalDateTime.now();
+    long day = now.getYear() * 10000L + now.getMonthValue() * 100 +
+            now.getDayOfMonth();
+    long floor = day * DAY_FACTOR +
+            now.toLocalTime().toNanoOfDay() / 1_000_000 * IDS_PER_MILLI;
+    return "O-" + counter.accumulateAndGet(floor,
+            (previous, next) -> Math.max(previous + 1, next));
+  }
+
+  /**
+   * @param dt       the day the order was placed, as yyyyMMdd
+   * @param sequence number of the order among the orders of that day
+   * @return the id of the order
+   */
+  public static String orderID(String dt, long sequence) {
+    return "O-" + (Long.parseLong(dt) * DAY_FACTOR + sequence);
+  }
+
+  /**
+   * @param orderID an order id
+   * @return the day the order was placed as yyyyMMdd, null if the id does
+   * not tell, e.g. because it was given out before ids carried the day
+   */
+  static String placedDay(String orderID) {
+    long numericID = OrderCodec.numericID(orderID);
+    return numericID < FIRST_DAY_ID ? null :
+            String.valueOf(numericID / DAY_FACTOR);
+  }
+
   public String getOrderID() {
     return orderID;
   }
@@ -65,10 +124,32 @@ public class OrderInstance implements Serializable {
     return userContact;
   }
 
+  /**
+   * @return when the order was placed, in milliseconds since the epoch, 0
+   * if that is not known
+   */
+  public long getPlacedAt() {
+    return placedAt;
+  }
+
+  /**
+   * @return the id of the request that placed the order, null if unknown
+   */
+  public String getRequestID() {
+    return requestID;
+  }
+
   public HashMap<String, Integer> getItems() {
     return items;
   }
 
+  /**
+   * Serialize in the compact form of {@link OrderCodec}.
+   */
+  private Object writeReplace() {
+    return new OrderCodec.CompactOrder(this);
+  }
+
   @Override
   public String toString() {
     return "OrderInstance{" +
@@ -0,0 +1,856 @@
+package server.order;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import server.jfr.CheckpointEvent;
+import server.jfr.JournalRecoveryEvent;
+import server.jfr.JournalWriteEvent;
+
+/**
+ * Append-only journal of {@link OrderEvent}s with periodic checkpoints.
+ * <p>
+ * For every day there is a checkpoint, which is the segment of the day in
+ * the {@link OrderArchive}, and a journal file, {@code yyyyMMdd.journal},
+ * which holds the events since that checkpoint. Each journal record is laid
+ * out as {@code [int length][int crc32][encoded event]} (see
+ * {@link OrderCodec}), so writing an event costs the same no matter how
+ * many orders were placed today. Once
+ * {@code checkpointInterval} events, or as many events as there are orders
+ * today if that is more, have been journaled the data is compacted into a
+ * new checkpoint and a fresh journal, which starts with a
+ * {@code CHECKPOINT} marker of the new generation, is moved in place of the
+ * old one. The old journal is then closed with the same marker. Since a
+ * checkpoint writes every order of the day, this keeps its cost per
+ * journaled event the same however many orders there are, and recovery
+ * never replays many more events than it loads orders.
+ * <p>
+ * Appending only queues the event. A single writer thread writes the
+ * queued events in batches, rolls over and takes the checkpoints, and
+ * forces each batch to disk with one fsync before completing the futures
+ * of its events (group commit). After the first event of a batch it waits
+ * up to {@code commitWindowMicros} for more, or until
+ * {@code maxBatchSize} events are queued, so that concurrent appends share
+ * the fsync instead of paying for one each.
+ * <p>
+ * Recovery loads the checkpoint and replays the journal on top of it. The
+ * journal of a past day, which is left behind if the service stopped before
+ * rolling over, is replayed on top of the segment of that day, which is then
+ * sealed again; the orders of that day that are not done carry over into
+ * today, as they would have on a rollover. A torn record at the tail (e.g. the process died in the middle of a write)
+ * ends the replay and is cut off so that new records follow valid ones.
+ * Whatever a batch that failed to be written left behind is cut off the
+ * same way before the next batch is written.
+ */
+public class OrderJournal implements Closeable {
+  static final String JOURNAL_SUFFIX = ".journal";
+  static final String TMP_SUFFIX = ".tmp";
+  // holds the term of the latest primary this OrderService knows of
+  static final String TERM_FILE = "term";
+  private static final int HEADER_BYTES = Integer.BYTES * 2;
+  private final Logger logger;
+  private final String archiveDir;
+  private final int checkpointInterval;
+  private final long commitWindowNanos;
+  private final int maxBatchSize;
+  private final OrderArchive archive;
+  private final Clock clock;
+  private ConcurrentHashMap<String, OrderInstance> orderData;
+  private String currentDt;
+  private DataOutputStream out;
+  private FileOutputStream outFile;
+  // the journal being written and how many of its bytes are complete
+  // records, whatever follows is cut off after a failed batch
+  private File outPath;
+  private long outLength;
+  private boolean torn;
+  private int sinceCheckpoint;
+  private FileChannel tail;
+  private long tailOffset;
+  // generation of the last checkpoint, bumped by each compaction
+  private long generation;
+  private final LinkedBlockingQueue<Append> pending;
+  private final LongAdder commits;
+  private final LongAdder committedEvents;
+  private final AtomicInteger maxBatch;
+  private final LongAdder commitNanos;
+  private final AtomicLong maxCommitNanos;
+  private Thread writer;
+  private volatile boolean closed;
+
+  /**
+   * @param archiveDir         directory of the checkpoint and journal files
+   * @param checkpointInterval least number of events after which the
+   *                           journal is compacted into a new checkpoint
+   * @param commitWindowMicros how long a batch waits for more events
+   *                           before it is forced to disk
+   * @param maxBatchSize       number of events after which a batch is
+   *                           forced to disk without waiting any longer
+   */
+  public OrderJournal(String archiveDir, int checkpointInterval,
+                      long commitWindowMicros, int maxBatchSize) {
+    this(archiveDir, checkpointInterval, commitWindowMicros, maxBatchSize,
+            Clock.systemDefaultZone());
+  }
+
+  /**
+   * @param clock tells the day, e.g. to journal a past day
+   */
+  OrderJournal(String archiveDir, int checkpointInterval,
+               long commitWindowMicros, int maxBatchSize, Clock clock) {
+    this.clock = clock;
+    this.logger = Logger.getLogger(OrderJournal.class.getName());
+    this.archiveDir = archiveDir;
+    this.checkpointInterval = checkpointInterval;
+    this.commitWindowNanos = TimeUnit.MICROSECONDS.toNanos(commitWindowMicros);
+    this.maxBatchSize = maxBatchSize;
+    this.archive = new OrderArchive(archiveDir);
+    this.orderData = new ConcurrentHashMap<>();
+    this.pending = new LinkedBlockingQueue<>();
+    this.commits = new LongAdder();
+    this.committedEvents = new LongAdder();
+    this.maxBatch = new AtomicInteger();
+    this.commitNanos = new LongAdder();
+    this.maxCommitNanos = new AtomicLong();
+  }
+
+  private String today() {
+    return LocalDate.now(clock).format(DateTimeFormatter.BASIC_ISO_DATE);
+  }
+
+  /**
+   * The checkpoint format used before checkpoints became segments: the
+   * Java-serialized order data.
+   */
+  File legacyCheckpointFile(String dt) {
+    return new File(archiveDir + dt);
+  }
+
+  File journalFile(String dt) {
+    return new File(archiveDir + dt + JOURNAL_SUFFIX);
+  }
+
+  /**
+   * Recover the order data of today by loading the last checkpoint and
+   * replaying the journal written after it. The returned map is the one
+   * that subsequent checkpoints are taken from, so the caller should keep
+   * mutating it.
+   *
+   * @return the recovered order data
+   * @throws IOException
+   * @throws ClassNotFoundException
+   */
+  public synchronized ConcurrentHashMap<String, OrderInstance> recover()
+          throws IOException, ClassNotFoundException {
+    JournalRecoveryEvent event = new JournalRecoveryEvent();
+    event.begin();
+    try {
+      closeStream();
+      closeTail();
+      currentDt = today();
+      Map<String, OrderInstance> carried = new HashMap<>();
+      List<String> sealed = openArchive(carried);
+      if (archive.readAll(currentDt, orderData) < 0) {
+        loadLegacyCheckpoint(currentDt, orderData);
+      }
+      openTail(currentDt);
+      sinceCheckpoint = replay(orderData);
+      event.orders = orderData.size();
+      event.events = sinceCheckpoint;
+      event.bytes = archive.segmentFile(currentDt).length() + tailOffset;
+      cutTornTail();
+      openStream();
+      // what today knows of an order is newer than what a past day does
+      carried.forEach(orderData::putIfAbsent);
+      if (!carried.isEmpty()) {
+        checkpoint();
+      }
+      // the past journals are in their segments now, and what carried over is
+      // in today's checkpoint, so they are not replayed again
+      for (String dt : sealed) {
+        Files.deleteIfExists(journalFile(dt).toPath());
+      }
+      startWriter();
+    } catch (IOException | RuntimeException e) {
+      event.failure = e.toString();
+      throw e;
+    } finally {
+      event.end();
+      event.commit();
+    }
+    this.logger.log(Level.INFO, System.currentTimeMillis() + ": Recovered " +
+            orderData.size() + " orders, replayed " + sinceCheckpoint +
+            " journaled events.");
+    return orderData;
+  }
+
+  /**
+   * Archive the past days that have a legacy checkpoint or a journal, so
+   * that later lookups and restarts only need their segments, and register
+   * the past days with the archive. The journal of a day is replayed on top
+   * of its segment, or its legacy checkpoint if it has none. A rollover
+   * deletes the journal of the day before, so a past day with a journal is
+   * one the service stopped on; if that is the last day before today and
+   * today has no checkpoint yet, its orders that are not done carry over.
+   * Today is left to recovery.
+   *
+   * @param carried map the orders that carry over into today are put into;
+   *                null if they do not carry over, e.g. on a takeover, which
+   *                has newer data
+   * @return the past days whose journals are archived now and may be
+   * deleted
+   * @throws IOException
+   */
+  private List<String> openArchive(Map<String, OrderInstance> carried)
+          throws IOException {
+    Set<String> unarchived = new TreeSet<>(archive.listDays(""));
+    unarchived.removeAll(archive.listDays(OrderArchive.SEGMENT_SUFFIX));
+    unarchived.addAll(archive.listDays(JOURNAL_SUFFIX));
+    boolean carry = carried != null &&
+            !archive.segmentFile(currentDt).exists();
+    List<String> journaled = new ArrayList<>();
+    long currentGeneration = generation;
+    for (String dt : unarchived) {
+      if (dt.compareTo(currentDt) >= 0) {
+        continue;
+      }
+      Map<String, OrderInstance> data = new HashMap<>();
+      generation = archive.readAll(dt, data);
+      boolean segmented = generation >= 0;
+      if (!segmented) {
+        generation = 0;
+        loadLegacyCheckpoint(dt, data);
+      }
+      openTail(dt);
+      int replayed = replay(data);
+      closeTail();
+      if (!segmented || replayed > 0) {
+        archive.write(dt, generation + 1, data.values());
+        archive.seal(dt);
+        this.logger.log(Level.INFO, System.currentTimeMillis() +
+                ": Archived " + data.size() + " orders of " + dt +
+                ", replayed " + replayed + " journaled events.");
+      }
+      if (!journalFile(dt).exists()) {
+        continue;
+      }
+      journaled.add(dt);
+      if (carry) {
+        // a later day has what carried over from an earlier one
+        carried.clear();
+        for (OrderInstance order : data.values()) {
+          if (order.getOrderStatus() != OrderStatus.COMPLETE &&
+                  order.getOrderStatus() != OrderStatus.PAYMENT_FAILED) {
+            carried.put(order.getOrderID(), order);
+          }
+        }
+      }
+    }
+    generation = currentGeneration;
+    archive.open(currentDt);
+    return journaled;
+  }
+
+  /**
+   * Find an order of a past day.
+   *
+   * @param orderID the order id
+   * @return the order as last archived, null if it is not archived
+   */
+  public OrderInstance findArchived(String orderID) {
+    return archive.find(orderID);
+  }
+
+  /**
+   * Load a legacy checkpoint into the given order data.
+   *
+   * @param dt     the day of the checkpoint
+   * @param target map the orders are put into
+   * @throws IOException
+   */
+  @SuppressWarnings("unchecked")
+  private void loadLegacyCheckpoint(String dt,
+                                    Map<String, OrderInstance> target)
+          throws IOException {
+    try (ObjectInputStream s = new ObjectInputStream(
+            new BufferedInputStream(new FileInputStream(
+                    legacyCheckpointFile(dt))))) {
+      target.putAll((Map<String, OrderInstance>) s.readObject());
+    } catch (FileNotFoundException e) {
+      // nothing checkpointed today, the journal (if any) applies on top of
+      // the data we already have
+    } catch (ClassNotFoundException e) {
+      throw new IOException("Checkpoint could not be read.", e);
+    }
+  }
+
+  /**
+   * Apply the events of the journal onto the given order data.
+   *
+   * @param target the order data
+   * @return the number of events applied
+   * @throws IOException
+   */
+  private int replay(Map<String, OrderInstance> target) throws IOException {
+    int applied = 0;
+    while (tail != null) {
+      OrderEvent event = readNext();
+      if (event == null) {
+        break;
+      }
+      if (event.getType() == OrderEvent.Type.CHECKPOINT) {
+        generation = event.getGeneration();
+      } else {
+        event.apply(target);
+        applied++;
+      }
+    }
+    return applied;
+  }
+
+  /**
+   * Read the next complete record at the tail offset.
+   *
+   * @return the event or null if there is no complete record yet
+   * @throws IOException
+   */
+  private OrderEvent readNext() throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+    if (readFully(header, tailOffset) < HEADER_BYTES) {
+      return null;
+    }
+    header.flip();
+    int length = header.getInt();
+    int checksum = header.getInt();
+    if (length <= 0) {
+      return null;
+    }
+    ByteBuffer payload = ByteBuffer.allocate(length);
+    if (readFully(payload, tailOffset + HEADER_BYTES) < length) {
+      return null;
+    }
+    CRC32 crc = new CRC32();
+    crc.update(payload.array());
+    if ((int) crc.getValue() != checksum) {
+      return null;
+    }
+    OrderEvent event;
+    try {
+      event = deserialize(payload.array());
+    } catch (ClassNotFoundException e) {
+      return null;
+    }
+    tailOffset += HEADER_BYTES + length;
+    return event;
+  }
+
+  private int readFully(ByteBuffer buffer, long position) throws IOException {
+    int total = 0;
+    while (buffer.hasRemaining()) {
+      int read = tail.read(buffer, position + total);
+      if (read < 0) {
+        break;
+      }
+      total += read;
+    }
+    return total;
+  }
+
+  private void openTail(String dt) throws IOException {
+    try {
+      tail = FileChannel.open(journalFile(dt).toPath(),
+              StandardOpenOption.READ);
+    } catch (NoSuchFileException e) {
+      tail = null;
+    }
+    tailOffset = 0;
+  }
+
+  private void closeTail() throws IOException {
+    if (tail != null) {
+      tail.close();
+      tail = null;
+    }
+  }
+
+  /**
+   * Drop whatever follows the last complete record of the journal.
+   *
+   * @throws IOException
+   */
+  private void cutTornTail() throws IOException {
+    File journal = journalFile(currentDt);
+    if (tail != null && tailOffset < journal.length()) {
+      this.logger.log(Level.WARNING, System.currentTimeMillis() +
+              ": Discarding " + (journal.length() - tailOffset) +
+              " bytes of a torn record at the end of the journal.");
+      try (RandomAccessFile raf = new RandomAccessFile(journal, "rw")) {
+        raf.setLength(tailOffset);
+      }
+    }
+    closeTail();
+  }
+
+  /**
+   * Start journaling on top of order data that was not recovered from this
+   * journal, e.g. when a secondary that was fed by replication takes over
+   * from a failed primary. The data is checkpointed first so that a
+   * recovery finds it.
+   *
+   * @param data the order data to be journaled from now on
+   * @throws IOException
+   */
+  public synchronized void takeOver(ConcurrentHashMap<String, OrderInstance>
+                                            data) throws IOException {
+    closeStream();
+    orderData = data;
+    currentDt = today();
+    List<String> sealed = openArchive(null);
+    checkpoint();
+    for (String dt : sealed) {
+      Files.deleteIfExists(journalFile(dt).toPath());
+    }
+    startWriter();
+    this.logger.log(Level.INFO, System.currentTimeMillis() +
+            ": Journal taken over with " + data.size() + " orders.");
+  }
+
+  /**
+   * @return the term saved by {@link #writeTerm}, 0 if none was
+   * @throws IOException
+   */
+  public long readTerm() throws IOException {
+    try (DataInputStream s = new DataInputStream(
+            new FileInputStream(archiveDir + TERM_FILE))) {
+      return s.readLong();
+    } catch (FileNotFoundException e) {
+      return 0;
+    }
+  }
+
+  /**
+   * Save the term of the latest primary, so that it is still known after a
+   * restart. The file is replaced in one go, so it never holds a partly
+   * written term.
+   *
+   * @param term the term
+   * @throws IOException
+   */
+  public void writeTerm(long term) throws IOException {
+    File newTerm = new File(archiveDir + TERM_FILE + TMP_SUFFIX);
+    try (FileOutputStream fos = new FileOutputStream(newTerm)) {
+      new DataOutputStream(fos).writeLong(term);
+      fos.getChannel().force(false);
+    }
+    Files.move(newTerm.toPath(), new File(archiveDir + TERM_FILE).toPath(),
+            StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Append an event to the journal. The event must already have been
+   * applied to the order data. It is only queued here, the writer thread
+   * writes it shortly after.
+   *
+   * @param event the event to be appended
+   * @return completes once the event is on disk, or fails with the
+   * {@link IOException} that kept it from getting there
+   */
+  public CompletableFuture<Void> append(OrderEvent event) {
+    Append append = new Append(event, System.nanoTime());
+    if (closed) {
+      append.committed.completeExceptionally(
+              new IOException("The journal is closed."));
+      return append.committed;
+    }
+    pending.add(append);
+    return append.committed;
+  }
+
+  private void startWriter() {
+    if (writer == null) {
+      writer = new Thread(this::writeQueued, "order-journal-writer");
+      writer.setDaemon(true);
+      writer.start();
+    }
+  }
+
+  /**
+   * The loop of the writer thread: gather a batch, write it with a single
+   * fsync and complete its appends, until the journal is closed and
+   * nothing is left.
+   */
+  private void writeQueued() {
+    List<Append> batch = new ArrayList<>();
+    while (!closed || !pending.isEmpty()) {
+      try {
+        Append first = pending.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        gather(batch);
+      } catch (InterruptedException e) {
+        // nobody interrupts the writer, write what is left and go on
+        pending.drainTo(batch, maxBatchSize - batch.size());
+      }
+      if (batch.isEmpty()) {
+        continue;
+      }
+      try {
+        writeBatch(batch);
+        committed(batch);
+      } catch (IOException e) {
+        this.logger.log(Level.WARNING, System.currentTimeMillis() +
+                ": State could not be saved. Refer: " + e);
+        torn = true;
+        for (Append append : batch) {
+          append.committed.completeExceptionally(e);
+        }
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+
+  /**
+   * Add to the batch whatever is appended within the commit window, until
+   * the batch is full.
+   *
+   * @throws InterruptedException
+   */
+  private void gather(List<Append> batch) throws InterruptedException {
+    long deadline = System.nanoTime() + commitWindowNanos;
+    pending.drainTo(batch, maxBatchSize - batch.size());
+    while (batch.size() < maxBatchSize && !closed) {
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        break;
+      }
+      Append next = pending.poll(remaining, TimeUnit.NANOSECONDS);
+      if (next == null) {
+        break;
+      }
+      batch.add(next);
+      pending.drainTo(batch, maxBatchSize - batch.size());
+    }
+  }
+
+  /**
+   * Complete the appends of a batch that is on disk and record how long
+   * they took.
+   */
+  private void committed(List<Append> batch) {
+    long now = System.nanoTime();
+    for (Append append : batch) {
+      long nanos = now - append.appendedAt;
+      commitNanos.add(nanos);
+      maxCommitNanos.accumulateAndGet(nanos, Math::max);
+      append.committed.complete(null);
+    }
+    commits.increment();
+    committedEvents.add(batch.size());
+    maxBatch.accumulateAndGet(batch.size(), Math::max);
+  }
+
+  /**
+   * Write a batch of events and force it to disk. Rolls over to a new day
+   * and takes a checkpoint whenever needed.
+   *
+   * @param batch the events to be written
+   * @throws IOException
+   */
+  private synchronized void writeBatch(List<Append> batch)
+          throws IOException {
+    JournalWriteEvent event = new JournalWriteEvent();
+    event.begin();
+    try {
+      if (torn) {
+        cutFailedBatch();
+      }
+      String dt = today();
+      if (!dt.equals(currentDt)) {
+        // the last checkpoint of a day is its segment in the archive
+        checkpoint();
+        archive.seal(currentDt);
+        // delivered orders and those whose payment failed are looked up in
+        // the archive from now on, the others carry over into the new day
+        orderData.values().removeIf(order ->
+                order.getOrderStatus() == OrderStatus.COMPLETE ||
+                order.getOrderStatus() == OrderStatus.PAYMENT_FAILED);
+        String previousDt = currentDt;
+        currentDt = dt;
+        checkpoint();
+        // a past day with a journal is one that did not roll over
+        Files.deleteIfExists(journalFile(previousDt).toPath());
+      }
+      for (Append append : batch) {
+        event.bytes += write(out, append.event);
+        if (++sinceCheckpoint >= checkpointThreshold()) {
+          checkpoint();
+        }
+      }
+      out.flush();
+      // events before a checkpoint in this batch are in its segment, which
+      // has been forced already
+      outFile.getChannel().force(false);
+      outLength = outFile.getChannel().size();
+      event.events = batch.size();
+    } catch (IOException | RuntimeException e) {
+      event.failure = e.toString();
+      throw e;
+    } finally {
+      event.end();
+      event.commit();
+    }
+  }
+
+  /**
+   * @return number of events after which a checkpoint is taken, which grows
+   * with the orders of the day as a checkpoint writes all of them
+   */
+  private int checkpointThreshold() {
+    return Math.max(checkpointInterval, orderData.size());
+  }
+
+  /**
+   * @return number of bytes written
+   */
+  private static int write(DataOutputStream out, OrderEvent event)
+          throws IOException {
+    byte[] payload = serialize(event);
+    CRC32 crc = new CRC32();
+    crc.update(payload);
+    out.writeInt(payload.length);
+    out.writeInt((int) crc.getValue());
+    out.write(payload);
+    return HEADER_BYTES + payload.length;
+  }
+
+  /**
+   * Compact the journal by writing the complete order data into the segment
+   * of the day and then moving a new journal in place. Both are first
+   * written to a temporary file so that a crash never leaves a half-written
+   * file behind. The old journal is closed with a marker.
+   *
+   * @throws IOException
+   */
+  private synchronized void checkpoint() throws IOException {
+    CheckpointEvent event = new CheckpointEvent();
+    event.begin();
+    event.day = currentDt;
+    try {
+      generation++;
+      archive.write(currentDt, generation, orderData.values());
+      File newJournal = new File(archiveDir + currentDt + JOURNAL_SUFFIX +
+              TMP_SUFFIX);
+      try (DataOutputStream s = new DataOutputStream(
+              new FileOutputStream(newJournal))) {
+        write(s, OrderEvent.checkpoint(generation));
+      }
+      Files.move(newJournal.toPath(), journalFile(currentDt).toPath(),
+              StandardCopyOption.REPLACE_EXISTING,
+              StandardCopyOption.ATOMIC_MOVE);
+      // events up to here are part of the checkpoint now
+      if (out != null) {
+        write(out, OrderEvent.checkpoint(generation));
+      }
+      closeStream();
+      openStream();
+      sinceCheckpoint = 0;
+      if (event.shouldCommit()) {
+        event.orders = orderData.size();
+        event.bytes = archive.segmentFile(currentDt).length();
+      }
+    } catch (IOException | RuntimeException e) {
+      event.failure = e.toString();
+      throw e;
+    } finally {
+      event.end();
+      event.commit();
+    }
+    this.logger.log(Level.INFO, System.currentTimeMillis() +
+            ": Checkpoint of " + orderData.size() + " orders taken. " + this);
+  }
+
+  /**
+   * Cut off what the last, failed batch left at the end of the journal.
+   * Replay ends at the first incomplete record, so whatever was written
+   * after it would be lost.
+   *
+   * @throws IOException if it could not be cut off, the next batch tries
+   *                     again
+   */
+  private void cutFailedBatch() throws IOException {
+    if (out != null) {
+      try {
+        out.close();
+      } catch (IOException e) {
+        // whatever it still held is cut off below
+      }
+      out = null;
+      outFile = null;
+    }
+    try (RandomAccessFile raf = new RandomAccessFile(outPath, "rw")) {
+      if (raf.length() > outLength) {
+        this.logger.log(Level.WARNING, System.currentTimeMillis() +
+                ": Discarding " + (raf.length() - outLength) +
+                " bytes of a batch that could not be written.");
+        raf.setLength(outLength);
+        raf.getChannel().force(true);
+      }
+    }
+    outFile = new FileOutputStream(outPath, true);
+    out = new DataOutputStream(new BufferedOutputStream(outFile));
+    torn = false;
+  }
+
+  private void openStream() throws FileNotFoundException {
+    outPath = journalFile(currentDt);
+    outFile = new FileOutputStream(outPath, true);
+    out = new DataOutputStream(new BufferedOutputStream(outFile));
+    outLength = outPath.length();
+  }
+
+  private void closeStream() throws IOException {
+    if (out != null) {
+      out.close();
+      out = null;
+      outFile = null;
+    }
+  }
+
+  /**
+   * @return number of batches forced to disk
+   */
+  public long getCommitCount() {
+    return commits.sum();
+  }
+
+  /**
+   * @return average number of events forced to disk together
+   */
+  public double getAverageBatchSize() {
+    long count = commits.sum();
+    return count == 0 ? 0 : (double) committedEvents.sum() / count;
+  }
+
+  /**
+   * @return largest number of events forced to disk together
+   */
+  public int getMaxBatchSize() {
+    return maxBatch.get();
+  }
+
+  /**
+   * @return average time from appending an event until it was on disk, in
+   * milliseconds
+   */
+  public double getAverageCommitMillis() {
+    long count = committedEvents.sum();
+    return count == 0 ? 0 : commitNanos.sum() / 1e6 / count;
+  }
+
+  /**
+   * @return longest time from appending an event until it was on disk, in
+   * milliseconds
+   */
+  public double getMaxCommitMillis() {
+    return maxCommitNanos.get() / 1e6;
+  }
+
+  @Override
+  public String toString() {
+    return "OrderJournal{" +
+            "commits=" + getCommitCount() +
+            ", averageBatchSize=" + getAverageBatchSize() +
+            ", maxBatchSize=" + getMaxBatchSize() +
+            ", averageCommitMillis=" + getAverageCommitMillis() +
+            ", maxCommitMillis=" + getMaxCommitMillis() +
+            '}';
+  }
+
+  /**
+   * Write whatever is still queued and close the journal. The writer is
+   * not interrupted, since an interrupt during an fsync would close the
+   * journal under it; it sees the journal closed within a poll and stops
+   * once the queue is empty.
+   *
+   * @throws IOException
+   */
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    if (writer != null) {
+      try {
+        writer.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    synchronized (this) {
+      closeStream();
+      closeTail();
+    }
+  }
+
+  private static byte[] serialize(OrderEvent event) throws IOException {
+    return OrderCodec.encodeEvent(event);
+  }
+
+  private static OrderEvent deserialize(byte[] payload) throws IOException,
+          ClassNotFoundException {
+    return OrderCodec.decodeEvent(payload);
+  }
+
+  /**
+   * A queued event, with the time it was appended at and the future that
+   * completes once it is on disk.
+   */
+  private static class Append {
+    final OrderEvent event;
+    final long appendedAt;
+    final CompletableFuture<Void> committed;
+
+    Append(OrderEvent event, long appendedAt) {
+      this.event = event;
+      this.appendedAt = appendedAt;
+      this.committed = new CompletableFuture<>();
+    }
+  }
+}
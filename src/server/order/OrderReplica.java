@@ -0,0 +1,40 @@
+package server.order;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interface of a secondary OrderService that is fed the order events by the
+ * primary.
+ */
+public interface OrderReplica extends Remote {
+
+  /**
+   * Apply a batch of events. Events the replica has already applied are
+   * skipped and a gap in the sequence numbers ends the batch, so the
+   * primary resends from the acknowledged sequence number. An empty batch
+   * is a heartbeat.
+   *
+   * @param epoch  epoch of the primary sending the events
+   * @param events the events in the order of their sequence numbers
+   * @return sequence number of the last applied event (0 if none), or -1
+   * if the replica needs a snapshot first
+   * @throws RemoteException
+   */
+  long replicate(long epoch, List<OrderEvent> events) throws RemoteException;
+
+  /**
+   * Replace the order data with a snapshot of the primary.
+   *
+   * @param epoch     epoch of the primary sending the snapshot
+   * @param sequence  sequence number of the last event in the snapshot
+   * @param orderData the order data of the primary
+   * @return sequence number of the last applied event
+   * @throws RemoteException
+   */
+  long installSnapshot(long epoch, long sequence,
+                       ConcurrentHashMap<String, OrderInstance> orderData)
+          throws RemoteException;
+}
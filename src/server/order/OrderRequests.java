@@ -0,0 +1,129 @@
+package server.order;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * The orders placed lately by the request id the client sent along, so that
+ * a {@code placeOrder} that is sent again, e.g. after a timeout or a
+ * failover, gets the order placed the first time instead of a second one.
+ * <p>
+ * A request is remembered for a window after it was made, far longer than
+ * a client keeps retrying, and forgotten if it did not place an order, so
+ * that sending it again tries again. The request id is saved with the
+ * order, so a secondary that takes over learns the requests of the primary
+ * from its order data.
+ */
+public class OrderRequests {
+  private final long windowMillis;
+  private final ConcurrentHashMap<String, CompletableFuture<String>> outcomes;
+  // request ids in the order they were made, to forget them in that order
+  private final ConcurrentLinkedQueue<Request> made;
+
+  /**
+   * @param windowMillis how long a request is remembered
+   */
+  public OrderRequests(long windowMillis) {
+    this.windowMillis = windowMillis;
+    this.outcomes = new ConcurrentHashMap<>();
+    this.made = new ConcurrentLinkedQueue<>();
+  }
+
+  /**
+   * Remember the requests of the given orders, e.g. after a restart or a
+   * takeover.
+   *
+   * @param orders the orders
+   */
+  void restore(Iterable<OrderInstance> orders) {
+    long since = System.currentTimeMillis() - windowMillis;
+    List<Request> restored = new ArrayList<>();
+    for (OrderInstance order : orders) {
+      if (order.requestID == null || order.placedAt < since) {
+        continue;
+      }
+      CompletableFuture<String> outcome =
+              CompletableFuture.completedFuture(order.getOrderID());
+      if (outcomes.putIfAbsent(order.requestID, outcome) == null) {
+        restored.add(new Request(order.requestID, order.placedAt, outcome));
+      }
+    }
+    restored.sort(Comparator.comparingLong(request -> request.madeAt));
+    made.addAll(restored);
+  }
+
+  /**
+   * Start a request, unless it was made before.
+   *
+   * @param requestID id of the request
+   * @return null if the request is new and the caller is to place the order,
+   * else the order id or failure message the request got the first time
+   * @throws InterruptedException
+   */
+  String begin(String requestID) throws InterruptedException {
+    long now = System.currentTimeMillis();
+    expire(now);
+    CompletableFuture<String> started = new CompletableFuture<>();
+    CompletableFuture<String> outcome = outcomes.putIfAbsent(requestID,
+            started);
+    if (outcome == null) {
+      made.add(new Request(requestID, now, started));
+      return null;
+    }
+    try {
+      // the first one may still be placing the order
+      return outcome.get();
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /**
+   * Finish a request started with {@link #begin}.
+   *
+   * @param requestID id of the request
+   * @param orderID   id of the order it placed, null if it placed none
+   * @param response  what the request got
+   */
+  void end(String requestID, String orderID, String response) {
+    CompletableFuture<String> outcome = orderID == null ?
+            outcomes.remove(requestID) : outcomes.get(requestID);
+    if (outcome != null) {
+      outcome.complete(response);
+    }
+  }
+
+  private void expire(long now) {
+    Request oldest;
+    while ((oldest = made.peek()) != null &&
+            oldest.madeAt < now - windowMillis) {
+      if (!oldest.outcome.isDone()) {
+        break;  // still placing the order, it is forgotten once done
+      }
+      if (made.remove(oldest)) {
+        outcomes.remove(oldest.requestID, oldest.outcome);
+      }
+    }
+  }
+
+  /**
+   * A request id along with the time the request was made and its outcome.
+   */
+  private static final class Request {
+    final String requestID;
+    final long madeAt;
+    final CompletableFuture<String> outcome;
+
+    Request(String requestID, long madeAt,
+            CompletableFuture<String> outcome) {
+      this.requestID = requestID;
+      this.madeAt = madeAt;
+      this.outcome = outcome;
+    }
+  }
+}
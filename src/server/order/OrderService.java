@@ -22,8 +22,12 @@ public interface OrderService extends Remote {
   String getMenu() throws IOException, ClassNotFoundException;
 
   /**
-   * Place the order.
+   * Place the order. A request sent again with the same request id gets the
+   * response of the first one instead of placing another order, so it is
+   * safe to retry.
    *
+   * @param requestID   id the client chose for this request, e.g. a UUID;
+   *                    null if the request is not to be retried
    * @param name        name of the user placing the order
    * @param contact     contact of the user placing the order
    * @param itemsNeeded items requested by the user
@@ -31,13 +35,13 @@ public interface OrderService extends Remote {
    * @throws IOException
    * @throws ClassNotFoundException
    */
-  String placeOrder(String name, long contact,
+  String placeOrder(String requestID, String name, long contact,
                     HashMap<String, Integer> itemsNeeded) throws IOException,
           InterruptedException, ClassNotFoundException;
 
   /**
-   * Get the status of the order from the KitchenService and report that
-   * to the user.
+   * Get the status of the order as last reported by the KitchenService and
+   * report that to the user.
    *
    * @param orderID order id of the order whose status is to be fetched
    * @return order status
@@ -46,4 +50,18 @@ public interface OrderService extends Remote {
    */
   OrderStatus getOrderStatus(String orderID) throws IOException,
           ClassNotFoundException;
+
+  /**
+   * Wait until the status of the order differs from the one the user
+   * already knows, or until the timeout passes.
+   *
+   * @param orderID       order id of the order whose status is to be watched
+   * @param knownStatus   the status the user already knows
+   * @param timeoutMillis maximum time to wait in milliseconds
+   * @return the current order status, which is {@code knownStatus} on
+   * timeout
+   * @throws IOException
+   */
+  OrderStatus awaitOrderStatus(String orderID, OrderStatus knownStatus,
+                               long timeoutMillis) throws IOException;
 }
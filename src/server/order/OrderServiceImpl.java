@@ -1,34 +1,51 @@
 package server.order;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.rmi.ConnectException;
+import java.rmi.ConnectIOException;
+import java.rmi.NoSuchObjectException;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
+import java.rmi.UnknownHostException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
-import java.util.logging.Logger;
 
+import server.kitchen.InventorySnapshot;
 import server.kitchen.KitchenService;
+import server.kitchen.ReservationResult;
+import server.kitchen.StatusEvent;
+import server.kitchen.StatusEventBatch;
+import server.jfr.InventoryCheckEvent;
+import server.jfr.PlaceOrderEvent;
+import shared.logging.AsyncLogger;
 import third_party.FinanceService;
 
 import static shared.Constants.FAILURE_MESSAGE;
 import static shared.Constants.INVENTORY_PRICE_MAP;
 import static shared.Constants.ITEM_NAMES;
+import static shared.Constants.KITCHEN_DISPATCH_PARALLELISM;
+import static shared.Constants.KITCHEN_DISPATCH_QUEUE_SIZE;
 import static shared.Constants.KITCHEN_HOST;
 import static shared.Constants.KITCHEN_NAME;
 import static shared.Constants.KITCHEN_PORT;
 import static shared.Constants.ORDER_ARCHIVE_DIR;
+import static shared.Constants.ORDER_CHECKPOINT_INTERVAL;
+import static shared.Constants.ORDER_COMMIT_MAX_BATCH_SIZE;
+import static shared.Constants.ORDER_COMMIT_WINDOW_MICROS;
+import static shared.Constants.ORDER_PAYMENT_MAX_BATCH_SIZE;
+import static shared.Constants.ORDER_PAYMENT_PARALLELISM;
+import static shared.Constants.ORDER_PAYMENT_QUEUE_SIZE;
+import static shared.Constants.ORDER_PAYMENT_WINDOW_MILLIS;
+import static shared.Constants.ORDER_REQUEST_WINDOW_MILLIS;
+import static shared.Constants.ORDER_SERVICE_NAME;
 
 /**
  * Implementation of the OrderService.
@@ -36,69 +53,524 @@ import static shared.Constants.ORDER_ARCHIVE_DIR;
  * @author Anshul Rao <rao.ans@northeastern.edu>
  */
 public class OrderServiceImpl extends UnicastRemoteObject
-        implements OrderService {
+        implements OrderService, ReplicationService, OrderReplica {
   final String FINANCE_HOST = "127.0.0.1";
   final int FINANCE_PORT = 4333;
   final String FINANCE_SERVICE_NAME = "FinanceService";
-  private final Logger logger;
+  // how long the inventory watcher waits for a change per call
+  final long INVENTORY_WAIT_MILLIS = 30000;
+  // how long the status subscriber waits for kitchen events per call
+  final long STATUS_WAIT_MILLIS = 30000;
+  // maximum number of kitchen status events fetched per call
+  final int MAX_STATUS_EVENTS = 256;
+  // time without contact after which a secondary registers again
+  final long REPLICATION_TIMEOUT_MILLIS = 5 * Replicator.HEARTBEAT_MILLIS;
+  private final AsyncLogger logger;
+  private final OrderJournal journal;
+  private final Replicator replicator;
+  private final KitchenDispatcher dispatcher;
+  private final PaymentProcessor payments;
+  private final OrderRequests requests;
+  private final Object replicaLock = new Object();
+  // notified whenever the status of an order changes
+  private final Object statusMonitor = new Object();
   ConcurrentHashMap<String, OrderInstance> orderData;
   KitchenService kitchenService;
   FinanceService financeService;
+  // the primary journals and streams the changes, a secondary applies them
+  volatile boolean primary;
+  String primaryHost;
+  int primaryPort;
+  // the primary this one stepped down for, followed instead of the one at
+  // primaryHost and primaryPort
+  private volatile ReplicationService successor;
+  // term of the latest primary we know of, see ReplicationService
+  private volatile long term;
+  private Thread follower;
+  private Thread fencer;
+  private final Thread inventoryWatcher;
+  private final Thread statusSubscriber;
+  // cleared once the OrderService is shut down
+  private volatile boolean running = true;
+  // epoch of the primary and sequence number of the last event applied
+  private long replicaEpoch = -1;
+  private long lastApplied = 0;
+  private volatile long lastContact;
+  // the menu rendered for the latest inventory version we know of
+  private volatile Menu menu;
 
+  /**
+   * Create the primary OrderService.
+   */
   public OrderServiceImpl() throws IOException, NotBoundException,
           ClassNotFoundException {
+    this(true, null, 0, null, null, ORDER_ARCHIVE_DIR);
+  }
+
+  /**
+   * Create a secondary OrderService that is fed by the given primary.
+   *
+   * @param primaryHost hostname of the primary OrderService
+   * @param primaryPort port of the primary OrderService
+   * @param archiveDir  directory of its own order archive, which it writes
+   *                    to once it takes over; not that of the primary
+   */
+  public OrderServiceImpl(String primaryHost, int primaryPort,
+                          String archiveDir)
+          throws IOException, NotBoundException, ClassNotFoundException {
+    this(false, primaryHost, primaryPort, null, null, archiveDir);
+  }
+
+  /**
+   * Create a primary OrderService that uses the given services as they are
+   * instead of looking them up, e.g. to run everything in one process.
+   *
+   * @param kitchenService the KitchenService
+   * @param financeService the FinanceService
+   * @param archiveDir     directory of the order archive
+   */
+  public OrderServiceImpl(KitchenService kitchenService,
+                          FinanceService financeService, String archiveDir)
+          throws IOException, NotBoundException, ClassNotFoundException {
+    this(true, null, 0, kitchenService, financeService, archiveDir);
+  }
+
+  private OrderServiceImpl(boolean primary, String primaryHost,
+                           int primaryPort, KitchenService kitchenService,
+                           FinanceService financeService, String archiveDir)
+          throws IOException, NotBoundException, ClassNotFoundException {
     super();
-    this.logger = Logger.getLogger(OrderServiceImpl.class.getName());
+    this.logger = AsyncLogger.getLogger(OrderServiceImpl.class.getName());
     this.orderData = new ConcurrentHashMap<>();
-    connectToKitchen();  // connect to KitchenService
-    connectToFinance();  // connect to FinanceService
-    syncData();
+    this.primary = primary;
+    this.primaryHost = primaryHost;
+    this.primaryPort = primaryPort;
+    this.journal = new OrderJournal(archiveDir, ORDER_CHECKPOINT_INTERVAL,
+            ORDER_COMMIT_WINDOW_MICROS, ORDER_COMMIT_MAX_BATCH_SIZE);
+    this.term = journal.readTerm();
+    this.requests = new OrderRequests(ORDER_REQUEST_WINDOW_MILLIS);
+    if (kitchenService == null) {
+      connectToKitchen();  // connect to KitchenService
+    } else {
+      this.kitchenService = kitchenService;
+    }
+    if (financeService == null) {
+      connectToFinance();  // connect to FinanceService
+    } else {
+      this.financeService = financeService;
+    }
+    if (primary) {
+      syncData();
+      requests.restore(orderData.values());
+    }
+    this.replicator = new Replicator(orderData);
+    this.dispatcher = new KitchenDispatcher(this.kitchenService,
+            KITCHEN_DISPATCH_QUEUE_SIZE, KITCHEN_DISPATCH_PARALLELISM);
+    this.payments = new PaymentProcessor(this.financeService,
+            ORDER_PAYMENT_QUEUE_SIZE, ORDER_PAYMENT_MAX_BATCH_SIZE,
+            ORDER_PAYMENT_WINDOW_MILLIS, ORDER_PAYMENT_PARALLELISM,
+            this::paymentSettled);
+    if (primary) {
+      try {
+        resumePayments();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    this.inventoryWatcher = new Thread(this::watchInventory,
+            "inventory-watcher");
+    inventoryWatcher.setDaemon(true);
+    inventoryWatcher.start();
+    this.statusSubscriber = new Thread(this::followKitchen,
+            "kitchen-status-subscriber");
+    statusSubscriber.setDaemon(true);
+    statusSubscriber.start();
+    if (!primary) {
+      startFollower();
+    }
   }
 
   /**
-   * Sync the data to the last most stable state.
+   * Shut the OrderService down: stop taking calls, stop the background
+   * threads, the kitchen hand-off and the payments, and close the journal
+   * once what is queued is written. A watcher that is waiting on the
+   * KitchenService over RMI stops once that call returns. Orders still waiting for their payment
+   * are paid once the OrderService is started again.
+   *
+   * @throws IOException
+   * @throws InterruptedException
+   */
+  public void shutdown() throws IOException, InterruptedException {
+    List<Thread> threads = new ArrayList<>();
+    synchronized (replicaLock) {
+      running = false;
+      threads.add(inventoryWatcher);
+      threads.add(statusSubscriber);
+      if (follower != null) {
+        threads.add(follower);
+      }
+      if (fencer != null) {
+        threads.add(fencer);
+      }
+    }
+    try {
+      unexportObject(this, true);
+    } catch (NoSuchObjectException e) {
+      // not exported any more
+    }
+    for (Thread thread : threads) {
+      thread.interrupt();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    replicator.stopAll();
+    dispatcher.stop();
+    payments.stop();
+    journal.close();
+    this.logger.log(Level.INFO, "OrderService has been shut down.");
+  }
+
+  /**
+   * Sync the data to the last most stable state, i.e., the last checkpoint
+   * with the journaled events since then replayed on top of it. This reads
+   * from disk and is only done at startup; afterwards the in-memory data is
+   * the source of truth.
    *
    * @throws IOException
    * @throws ClassNotFoundException
    */
-  @SuppressWarnings("unchecked")
   private void syncData() throws IOException, ClassNotFoundException {
-    try {
-      String currentDt = new SimpleDateFormat("yyyyMMdd").format(new Date());
-      File file = new File(ORDER_ARCHIVE_DIR + currentDt);
-      ObjectInputStream s = new ObjectInputStream(new FileInputStream(file));
-      this.orderData =
-              (ConcurrentHashMap<String, OrderInstance>) s.readObject();
-      this.logger.log(Level.INFO, System.currentTimeMillis() + ": " +
-              "OrderService has been synced to its last stable state.");
-      s.close();
-    } catch (FileNotFoundException e) {
-      this.logger.log(Level.INFO, System.currentTimeMillis() + ": " +
-              "No previous saved state to sync to.");
+    this.orderData = journal.recover();
+    this.logger.log(Level.INFO,
+            "OrderService has been synced to its last stable state.");
+  }
+
+  /**
+   * Start following the primary, unless that is going on already.
+   */
+  private void startFollower() {
+    synchronized (replicaLock) {
+      if (running && (follower == null || !follower.isAlive())) {
+        follower = new Thread(this::followPrimary, "primary-follower");
+        follower.setDaemon(true);
+        follower.start();
+      }
+    }
+  }
+
+  /**
+   * @return the primary this secondary follows
+   * @throws RemoteException
+   * @throws NotBoundException
+   */
+  private ReplicationService lookupPrimary() throws RemoteException,
+          NotBoundException {
+    ReplicationService current = successor;
+    if (current != null) {
+      return current;
+    }
+    Registry registry = LocateRegistry.getRegistry(primaryHost, primaryPort);
+    return (ReplicationService) registry.lookup(ORDER_SERVICE_NAME);
+  }
+
+  /**
+   * Keep a secondary registered with the primary. The primary sends at
+   * least a heartbeat every {@link Replicator#HEARTBEAT_MILLIS}, so if
+   * nothing arrived for a while the registration is renewed, resuming from
+   * the last applied event. The term of the primary is taken over, so that
+   * a takeover raises it.
+   */
+  private void followPrimary() {
+    while (running && !primary) {
+      if (System.currentTimeMillis() - lastContact >
+              REPLICATION_TIMEOUT_MILLIS) {
+        try {
+          ReplicationService primaryService = lookupPrimary();
+          long primaryTerm = primaryService.currentTerm();
+          long epoch;
+          long sequence;
+          synchronized (replicaLock) {
+            raiseTerm(primaryTerm);
+            epoch = replicaEpoch;
+            sequence = lastApplied;
+          }
+          primaryService.registerReplica(this, epoch, sequence);
+          lastContact = System.currentTimeMillis();
+          if (this.logger.isLoggable(Level.INFO)) {
+            this.logger.log(Level.INFO, "Registered with the primary " +
+                    "OrderService of term {}.", primaryTerm);
+          }
+        } catch (Exception e) {
+          this.logger.log(Level.FINE,
+                  "Primary OrderService is unreachable. Refer: {}", e);
+        }
+      }
+      try {
+        Thread.sleep(Replicator.HEARTBEAT_MILLIS);
+      } catch (InterruptedException e) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Take over from the primary, i.e., stop applying its events and start
+   * journaling and streaming the changes ourselves. Called when a secondary
+   * is asked to place an order, which clients only do once the primary is
+   * unreachable; it takes over only if it finds the primary down too. The
+   * takeover starts a new term, which is saved before anything else, and
+   * the former primary is made to step down for it. The order data is
+   * already warm, nothing is reloaded.
+   *
+   * @throws NotPrimaryException if the primary is up
+   * @throws IOException
+   * @throws InterruptedException
+   */
+  private void takeOver() throws IOException, InterruptedException {
+    if (primary) {
+      return;
+    }
+    if (!primaryIsDown()) {
+      throw new NotPrimaryException("The primary OrderService is up, this " +
+              "one does not take over.");
+    }
+    long newTerm;
+    synchronized (replicaLock) {
+      if (primary) {
+        return;
+      }
+      newTerm = Math.max(System.currentTimeMillis(), term + 1);
+      journal.writeTerm(newTerm);
+      term = newTerm;
+      journal.takeOver(orderData);
+      requests.restore(orderData.values());
+      primary = true;
+    }
+    if (this.logger.isLoggable(Level.WARNING)) {
+      this.logger.log(Level.WARNING, "Secondary OrderService has taken " +
+              "over as primary of term {} after event {}.", newTerm,
+              lastApplied);
+    }
+    synchronized (replicaLock) {
+      if (running) {
+        fencer = new Thread(this::fencePrimary, "primary-fencer");
+        fencer.setDaemon(true);
+        fencer.start();
+      }
     }
+    resumePayments();
   }
 
   /**
-   * Save the current state.
+   * Find out whether the primary is down, i.e., nothing was heard from it
+   * lately and it cannot be connected to. A primary that can be connected
+   * to but fails or is slow to respond is not down, as it may still be
+   * placing orders.
    *
-   * @param data the data to be saved
-   * @return
+   * @return true if the primary is down
    */
-  private boolean saveState(ConcurrentHashMap<String, OrderInstance> data) {
+  private boolean primaryIsDown() {
+    if (System.currentTimeMillis() - lastContact <=
+            REPLICATION_TIMEOUT_MILLIS) {
+      return false;
+    }
     try {
-      String currentDt = new SimpleDateFormat("yyyyMMdd").format(new Date());
-      File file = new File(ORDER_ARCHIVE_DIR + currentDt);
-      ObjectOutputStream s = new ObjectOutputStream(new FileOutputStream(file));
-      s.writeObject(data);
-      s.close();
-      this.logger.log(Level.INFO, System.currentTimeMillis() +
-              ": State saved.");
-    } catch (Exception e) {
-      this.logger.log(Level.WARNING, System.currentTimeMillis() +
-              ": State could not be saved.");
+      lookupPrimary().currentTerm();
       return false;
+    } catch (ConnectException | ConnectIOException | UnknownHostException |
+             NotBoundException e) {
+      return true;
+    } catch (RemoteException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Make the former primary step down for this one. This goes on for as
+   * long as this one is the primary, so that the former primary is fenced
+   * within a heartbeat once it is back, also if it is restarted as the
+   * primary. If it knows of a later term, this one steps down instead.
+   */
+  private void fencePrimary() {
+    while (running && primary) {
+      try {
+        ReplicationService former = lookupPrimary();
+        long formerTerm = former.stepDown(term, this);
+        if (formerTerm > term) {
+          stepDown(formerTerm, former);
+          return;
+        }
+      } catch (Exception e) {
+        this.logger.log(Level.FINE,
+                "Former primary OrderService is unreachable. Refer: {}", e);
+      }
+      try {
+        Thread.sleep(Replicator.HEARTBEAT_MILLIS);
+      } catch (InterruptedException e) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Raise the term we know of, saving it. Called with the replica lock
+   * held.
+   *
+   * @param newTerm a term, ignored unless it is later than ours
+   */
+  private void raiseTerm(long newTerm) {
+    if (newTerm <= term) {
+      return;
+    }
+    term = newTerm;
+    try {
+      journal.writeTerm(newTerm);
+    } catch (IOException e) {
+      this.logger.log(Level.SEVERE, "Could not save the term. Refer: {}",
+              e);
+    }
+  }
+
+  /**
+   * Send the payments of the orders still waiting for one, e.g. after a
+   * restart or a failover. Payments that the previous primary made already
+   * are not charged again, as the order id is their idempotency key.
+   *
+   * @throws InterruptedException
+   */
+  private void resumePayments() throws InterruptedException {
+    int resumed = 0;
+    for (OrderInstance order : orderData.values()) {
+      if (order.getOrderStatus() == OrderStatus.PAYMENT_PENDING) {
+        payments.submit(order);
+        resumed++;
+      }
+    }
+    if (resumed > 0 && this.logger.isLoggable(Level.INFO)) {
+      this.logger.log(Level.INFO, "Resumed the payments of {} orders.",
+              resumed);
+    }
+  }
+
+  @Override
+  public void registerReplica(OrderReplica replica, long epoch,
+                              long lastSequence) throws RemoteException {
+    if (!primary) {
+      // the replicas of a primary that stepped down follow its successor
+      ReplicationService current = successor;
+      if (current == null) {
+        throw new RemoteException("This OrderService is not the primary.");
+      }
+      current.registerReplica(replica, epoch, lastSequence);
+      return;
+    }
+    replicator.register(replica, epoch, lastSequence);
+  }
+
+  @Override
+  public long currentTerm() {
+    return term;
+  }
+
+  @Override
+  public long stepDown(long successorTerm, ReplicationService successor) {
+    boolean wasPrimary;
+    synchronized (replicaLock) {
+      if (successorTerm < term) {
+        return term;
+      }
+      raiseTerm(successorTerm);
+      this.successor = successor;
+      wasPrimary = primary;
+      primary = false;
+    }
+    if (wasPrimary) {
+      // the replicas register again, and are sent on to the successor
+      replicator.stopAll();
+      if (this.logger.isLoggable(Level.WARNING)) {
+        this.logger.log(Level.WARNING, "OrderService has stepped down for " +
+                "the primary of term {}.", successorTerm);
+      }
+    }
+    startFollower();
+    return successorTerm;
+  }
+
+  @Override
+  public long replicate(long epoch, List<OrderEvent> events)
+          throws RemoteException {
+    synchronized (replicaLock) {
+      if (primary) {
+        throw new RemoteException("This OrderService is the primary now.");
+      }
+      lastContact = System.currentTimeMillis();
+      if (epoch != replicaEpoch) {
+        return -1;
+      }
+      for (OrderEvent event : events) {
+        if (event.getSequence() <= lastApplied) {
+          continue;
+        } else if (event.getSequence() != lastApplied + 1) {
+          break;  // gap, the primary resends from what we acknowledge
+        }
+        event.apply(orderData);
+        lastApplied = event.getSequence();
+      }
+      statusChanged();
+      return lastApplied;
+    }
+  }
+
+  @Override
+  public long installSnapshot(long epoch, long sequence,
+                              ConcurrentHashMap<String, OrderInstance> data)
+          throws RemoteException {
+    synchronized (replicaLock) {
+      if (primary) {
+        throw new RemoteException("This OrderService is the primary now.");
+      }
+      lastContact = System.currentTimeMillis();
+      orderData.putAll(data);
+      replicaEpoch = epoch;
+      lastApplied = sequence;
+      statusChanged();
+      if (this.logger.isLoggable(Level.INFO)) {
+        this.logger.log(Level.INFO, "Installed a snapshot of {} orders up " +
+                "to event {}.", data.size(), sequence);
+      }
+      return lastApplied;
+    }
+  }
+
+  /**
+   * Save a change to the current state by streaming it to the secondaries
+   * and appending it to the journal. Neither waits for the disk.
+   *
+   * @param event the change to be saved, already applied to the order data
+   * @return completes once the change is on disk
+   */
+  private CompletableFuture<Void> saveState(OrderEvent event) {
+    return journal.append(replicator.publish(event));
+  }
+
+  /**
+   * Wait until a saved change is on disk.
+   *
+   * @param saved what {@link #saveState} returned
+   * @throws IOException if the change could not be written
+   * @throws InterruptedException
+   */
+  private static void awaitSaved(CompletableFuture<Void> saved)
+          throws IOException, InterruptedException {
+    try {
+      saved.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
     }
-    return true;
   }
 
   /**
@@ -113,8 +585,8 @@ public class OrderServiceImpl extends UnicastRemoteObject
             KITCHEN_PORT);
     // lookup the KitchenService using registry
     this.kitchenService = (KitchenService) registry.lookup(KITCHEN_NAME);
-    this.logger.log(Level.INFO, System.currentTimeMillis() + ": The " +
-            "OrderService has successfully connected to KitchenService.");
+    this.logger.log(Level.INFO, "The OrderService has successfully " +
+            "connected to KitchenService.");
   }
 
   /**
@@ -132,115 +604,405 @@ public class OrderServiceImpl extends UnicastRemoteObject
   }
 
   /**
-   * Get the latest menu.
+   * Keep the cached menu up to date by waiting for inventory changes on the
+   * KitchenService. While the kitchen cannot be reached the cache is
+   * dropped, so that the menu is not served stale.
+   */
+  private void watchInventory() {
+    while (running) {
+      try {
+        Menu current = menu;
+        InventorySnapshot inventory = current == null ?
+                kitchenService.getInventory() :
+                kitchenService.awaitInventoryChange(current.version,
+                        INVENTORY_WAIT_MILLIS);
+        if (inventory != null) {
+          cacheMenu(inventory);
+        }
+      } catch (RemoteException e) {
+        menu = null;
+        this.logger.log(Level.WARNING,
+                "Could not watch the inventory. Refer: {}", e);
+        try {
+          Thread.sleep(INVENTORY_WAIT_MILLIS / 10);
+        } catch (InterruptedException ie) {
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Keep the status of the orders up to date by applying the status events
+   * of the KitchenService, resuming after the last one applied. Only the
+   * primary does this, a secondary gets the changes from the primary.
+   */
+  private void followKitchen() {
+    long epoch = -1;
+    long sequence = 0;
+    while (running) {
+      try {
+        if (!primary) {
+          Thread.sleep(Replicator.HEARTBEAT_MILLIS);
+          continue;
+        }
+        try {
+          StatusEventBatch batch = kitchenService.pollStatusEvents(epoch,
+                  sequence, MAX_STATUS_EVENTS, STATUS_WAIT_MILLIS);
+          if (batch.getSnapshot() != null) {
+            batch.getSnapshot().forEach((orderID, orderStatus) ->
+                    updateStatus(orderData.get(orderID), orderStatus));
+            if (this.logger.isLoggable(Level.INFO)) {
+              this.logger.log(Level.INFO, "Synced the status of {} orders " +
+                      "with the KitchenService.",
+                      batch.getSnapshot().size());
+            }
+          }
+          for (StatusEvent event : batch.getEvents()) {
+            updateStatus(orderData.get(event.getOrderID()), event.getStatus());
+          }
+          epoch = batch.getEpoch();
+          sequence = batch.getLastSequence();
+        } catch (RemoteException e) {
+          this.logger.log(Level.WARNING,
+                  "Could not follow the order status. Refer: {}", e);
+          Thread.sleep(STATUS_WAIT_MILLIS / 10);
+        }
+      } catch (InterruptedException e) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Render the menu for the given inventory and cache it, unless a menu for
+   * a later version is cached already.
    *
-   * @return the menu
-   * @throws IOException
-   * @throws ClassNotFoundException
+   * @param inventory the counts of all items
+   * @return the cached menu
    */
-  @Override
-  public String getMenu() throws IOException, ClassNotFoundException {
-    syncData();
-    StringBuilder menu = new StringBuilder("***MENU***\n\n");
+  private synchronized Menu cacheMenu(InventorySnapshot inventory) {
+    Menu current = menu;
+    if (current != null && current.version >= inventory.getVersion()) {
+      return current;
+    }
+    StringBuilder text = new StringBuilder("***MENU***\n\n");
     for (String item : ITEM_NAMES) {
-      menu.append(item).append(" * PRICE: ").append(INVENTORY_PRICE_MAP.get(item))
-              .append("$ * ").append("COUNT:").append(kitchenService
+      text.append(item).append(" * PRICE: ").append(INVENTORY_PRICE_MAP.get(item))
+              .append("$ * ").append("COUNT:").append(inventory
                       .getItemCount(item))
               .append("\n");
     }
-    this.logger.log(Level.INFO, System.currentTimeMillis() + ": " +
-            "Returning the latest menu to the user.");
-    return menu.toString();
+    menu = new Menu(inventory.getVersion(), text.toString());
+    return menu;
   }
 
   /**
-   * Check if the given item is available for the given count.
+   * Get the latest menu. It is served from the cache, which the inventory
+   * watcher renews whenever the inventory changes, so usually no remote
+   * call is made.
    *
-   * @param itemName name of item
-   * @param needed   count of items needed
-   * @return true if item with given count is available, else false
-   * @throws RemoteException
+   * @return the menu
+   * @throws IOException
+   * @throws ClassNotFoundException
    */
-  private boolean isItemAvailable(String itemName, int needed)
-          throws RemoteException {
-    int available = kitchenService.getItemCount(itemName);
-    return available >= needed;
+  @Override
+  public String getMenu() throws IOException, ClassNotFoundException {
+    Menu current = menu;
+    if (current == null) {
+      current = cacheMenu(kitchenService.getInventory());
+    }
+    this.logger.log(Level.INFO, "Returning the latest menu to the user.");
+    return current.text;
   }
 
   /**
-   * Place the order.
+   * Place the order, or return what the request got the first time if it
+   * was sent before.
    *
+   * @param requestID   id the client chose for this request, null if none
    * @param name        name of the user placing the order
    * @param contact     contact of the user placing the order
    * @param itemsNeeded items requested by the user
    * @return order id if order was placed, else return failure message
    * @throws IOException
+   * @throws InterruptedException
    * @throws ClassNotFoundException
    */
   @Override
-  public synchronized String placeOrder(String name, long contact,
-                                        HashMap<String, Integer> itemsNeeded)
-          throws IOException, ClassNotFoundException {
-    syncData();
-    double amount = 0;
-    for (String item : itemsNeeded.keySet()) {
-      if (isItemAvailable(item, itemsNeeded.get(item))) {
-        amount += INVENTORY_PRICE_MAP.get(item) * itemsNeeded.get(item);
-        this.logger.log(Level.INFO, System.currentTimeMillis() + ": " +
-                "Total amount for the order = " + amount);
-      } else {
-        this.logger.log(Level.WARNING, System.currentTimeMillis() + ": " +
-                "Order could not be placed!");
-        return FAILURE_MESSAGE;
-      }
-    }
-    boolean isPaid = this.financeService.makePayment(name, contact, amount);
-    if (isPaid) {
-      this.logger.log(Level.INFO, System.currentTimeMillis() + ": " +
-              "Payment has been processed!");
-    }
-    OrderInstance newOrder = new OrderInstance(amount, name, contact,
-            itemsNeeded);
-    orderData.put(newOrder.getOrderID(), newOrder);
-    this.logger.log(Level.INFO, System.currentTimeMillis() + ": " +
-            "Order has been placed!");
-    saveState(orderData);
-    // start processing of order in a separate thread
-    new Thread(() -> {
+  public String placeOrder(String requestID, String name, long contact,
+                           HashMap<String, Integer> itemsNeeded)
+          throws IOException, InterruptedException, ClassNotFoundException {
+    PlaceOrderEvent event = new PlaceOrderEvent();
+    event.begin();
+    event.outcome = "FAILED";
+    try {
+      // a secondary learns the requests of the primary as it takes over
+      takeOver();
+      if (requestID == null) {
+        return placeOrder(null, name, contact, itemsNeeded, event);
+      }
+      String previous = requests.begin(requestID);
+      if (previous != null) {
+        event.orderID = previous;
+        event.outcome = "DUPLICATE";
+        return previous;
+      }
+      String response = FAILURE_MESSAGE;
       try {
-        kitchenService.processOrder(newOrder);
-      } catch (RemoteException | InterruptedException e) {
-        throw new RuntimeException(e);
+        response = placeOrder(requestID, name, contact, itemsNeeded, event);
+      } finally {
+        requests.end(requestID, event.orderID, response);
+      }
+      return response;
+    } finally {
+      event.commit();
+    }
+  }
+
+  /**
+   * Place the order, see
+   * {@link #placeOrder(String, String, long, HashMap)}.
+   *
+   * @param event the flight recorder event of the call, filled in here
+   */
+  private String placeOrder(String requestID, String name, long contact,
+                            HashMap<String, Integer> itemsNeeded,
+                            PlaceOrderEvent event)
+          throws IOException, InterruptedException {
+    event.items = itemsNeeded.size();
+    // check and reserve all items in one go, the kitchen makes sure that
+    // concurrent orders cannot take the same items
+    InventoryCheckEvent check = new InventoryCheckEvent();
+    check.begin();
+    ReservationResult reservation = kitchenService.reserveItems(itemsNeeded);
+    check.items = itemsNeeded.size();
+    check.reserved = reservation.isReserved();
+    check.commit();
+    if (!reservation.isReserved()) {
+      this.logger.log(Level.WARNING, "Order could not be placed! " +
+              "Unavailable: {}", reservation.getUnavailable());
+      event.outcome = "UNAVAILABLE";
+      return FAILURE_MESSAGE;
+    }
+    OrderInstance newOrder = null;
+    boolean accepted = false;
+    try {
+      double amount = 0;
+      for (String item : itemsNeeded.keySet()) {
+        amount += INVENTORY_PRICE_MAP.get(item) * itemsNeeded.get(item);
+      }
+      event.amount = amount;
+      if (this.logger.isLoggable(Level.INFO)) {
+        this.logger.log(Level.INFO, "Total amount for the order = {}",
+                amount);
       }
-    }).start();
+      newOrder = new OrderInstance(amount, name, contact, itemsNeeded,
+              OrderStatus.PAYMENT_PENDING);
+      newOrder.requestID = requestID;
+      orderData.put(newOrder.getOrderID(), newOrder);
+      this.logger.log(Level.INFO,
+              "Order has been placed, its payment is pending.");
+      // the order id is only handed out once the order is on disk, orders
+      // placed at the same time share the fsync
+      awaitSaved(saveState(OrderEvent.placed(newOrder)));
+      // pay in the background, along with the orders placed meanwhile, this
+      // waits only if too many orders are already waiting for payment
+      payments.submit(newOrder);
+      accepted = true;
+    } finally {
+      if (!accepted) {
+        abandon(newOrder, itemsNeeded);
+      }
+    }
+    event.orderID = newOrder.getOrderID();
+    event.outcome = "PLACED";
     return newOrder.getOrderID();
   }
 
   /**
-   * Get the status of the order from the KitchenService and report that
-   * to the user.
+   * Get the status of the order as last reported by the KitchenService and
+   * report that to the user.
    *
    * @param orderID order id of the order whose status is to be fetched
-   * @return order status
+   * @return order status, INVALID if the order is unknown
    * @throws IOException
    * @throws ClassNotFoundException
    */
   @Override
   public OrderStatus getOrderStatus(String orderID) throws IOException,
           ClassNotFoundException {
-    syncData();
+    OrderInstance instance = findOrder(orderID);
+    return instance == null ? OrderStatus.INVALID : instance.getOrderStatus();
+  }
+
+  /**
+   * Find an order among the orders of today, or else in the archive of the
+   * past days.
+   *
+   * @param orderID the order id
+   * @return the order, null if it is unknown
+   */
+  private OrderInstance findOrder(String orderID) {
+    OrderInstance instance = orderData.get(orderID);
+    return instance != null ? instance : journal.findArchived(orderID);
+  }
+
+  /**
+   * Wait until the status of the order differs from the one the user
+   * already knows, or until the timeout passes.
+   *
+   * @param orderID       order id of the order whose status is to be watched
+   * @param knownStatus   the status the user already knows
+   * @param timeoutMillis maximum time to wait in milliseconds
+   * @return the current order status, which is {@code knownStatus} on
+   * timeout
+   * @throws IOException
+   */
+  @Override
+  public OrderStatus awaitOrderStatus(String orderID, OrderStatus knownStatus,
+                                      long timeoutMillis) throws IOException {
+    OrderInstance instance = orderData.get(orderID);
+    if (instance == null) {
+      // an archived order does not change anymore
+      instance = journal.findArchived(orderID);
+      return instance == null ? OrderStatus.INVALID :
+              instance.getOrderStatus();
+    }
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    synchronized (statusMonitor) {
+      long remaining = timeoutMillis;
+      while (instance.getOrderStatus() == knownStatus && remaining > 0) {
+        try {
+          statusMonitor.wait(remaining);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+        remaining = deadline - System.currentTimeMillis();
+      }
+    }
+    return instance.getOrderStatus();
+  }
+
+  /**
+   * Move an order on once its payment is settled: a paid order is PLACED
+   * and handed to the kitchen, the items of a declined one are given back.
+   *
+   * @param order the order
+   * @param paid  true if the payment was made
+   * @throws InterruptedException
+   */
+  private void paymentSettled(OrderInstance order, boolean paid)
+          throws InterruptedException {
+    if (!settle(order, paid ? OrderStatus.PLACED :
+            OrderStatus.PAYMENT_FAILED)) {
+      return;  // settled before, e.g. sent again after a failover
+    }
+    if (!paid) {
+      this.logger.log(Level.WARNING, "Payment of order {} was declined.",
+              order.getOrderID());
+      releaseItems(order.getOrderID(), order.getItems());
+      return;
+    }
+    // hand the order to the kitchen in the background, this waits only if
+    // too many orders are already waiting for hand-off
+    dispatcher.dispatch(order);
+  }
+
+  /**
+   * Give up on an order whose items are reserved but that could not be
+   * saved or sent for payment. The order fails rather than being removed,
+   * since the secondaries may know of it already and would otherwise
+   * charge it once they take over.
+   *
+   * @param order the order, null if it was not created
+   * @param items the items reserved for it
+   */
+  private void abandon(OrderInstance order, HashMap<String, Integer> items) {
+    if (order != null && !settle(order, OrderStatus.PAYMENT_FAILED)) {
+      return;  // its payment was sent after all, e.g. by a takeover
+    }
+    String orderID = order == null ? null : order.getOrderID();
+    this.logger.log(Level.WARNING, "Order {} could not be placed, giving " +
+            "back its items.", orderID);
+    releaseItems(orderID, items);
+  }
+
+  /**
+   * Move an order on from PAYMENT_PENDING.
+   *
+   * @param order  the order
+   * @param status the status it moves to
+   * @return false if it had moved on already
+   */
+  private boolean settle(OrderInstance order, OrderStatus status) {
+    synchronized (order) {
+      if (order.getOrderStatus() != OrderStatus.PAYMENT_PENDING) {
+        return false;
+      }
+      updateStatus(order, status);
+      return true;
+    }
+  }
+
+  /**
+   * Give the items of an order that will not be prepared back to the
+   * kitchen.
+   */
+  private void releaseItems(String orderID, HashMap<String, Integer> items) {
     try {
-      OrderStatus orderStatus = kitchenService.getOrderUpdate(orderID);
-      if (orderStatus != null) {
-        OrderInstance instance =
-                orderData.get(orderID);
-        instance.setOrderStatus(orderStatus);
-        orderData.put(orderID, instance);
-        saveState(orderData);
-      }
-      return orderData.get(orderID).getOrderStatus();
-    } catch (Exception e) {
-      return OrderStatus.INVALID;
+      kitchenService.releaseItems(items);
+    } catch (RemoteException e) {
+      this.logger.log(Level.SEVERE, "Items of order {} could not be " +
+              "released. Refer: {}", orderID, e);
+    }
+  }
+
+  /**
+   * Record a new status of an order, as the kitchen reported it or once
+   * its payment is settled.
+   *
+   * @param instance    the order, null if it is unknown here
+   * @param orderStatus the status reported
+   */
+  private void updateStatus(OrderInstance instance, OrderStatus orderStatus) {
+    if (instance == null) {
+      return;
+    }
+    // changes of one order have to be saved in the order they are made
+    synchronized (instance) {
+      if (instance.getOrderStatus() == orderStatus) {
+        return;
+      }
+      instance.setOrderStatus(orderStatus);
+      if (primary) {
+        saveState(OrderEvent.statusChanged(instance.getOrderID(),
+                orderStatus));
+      }
+    }
+    statusChanged();
+  }
+
+  /**
+   * Wake up whoever is waiting for a status change.
+   */
+  private void statusChanged() {
+    synchronized (statusMonitor) {
+      statusMonitor.notifyAll();
+    }
+  }
+
+  /**
+   * A menu rendered for a specific inventory version.
+   */
+  private static class Menu {
+    final long version;
+    final String text;
+
+    Menu(long version, String text) {
+      this.version = version;
+      this.text = text;
     }
   }
 }
\ No newline at end of file
@@ -1,5 +1,12 @@
 package server.order;
 
+/**
+ * Status of an order. {@link OrderCodec} writes the ordinal, so new
+ * statuses have to be added at the end.
+ * <p>
+ * An order is PAYMENT_PENDING until its payment is made; then it is PLACED
+ * and handed to the kitchen, or PAYMENT_FAILED if the payment was declined.
+ */
 public enum OrderStatus {
-  PLACED, COMPLETE, READY, INVALID
+  PLACED, COMPLETE, READY, ASSIGNED, INVALID, PAYMENT_PENDING, PAYMENT_FAILED
 }
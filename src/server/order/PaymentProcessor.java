@@ -0,0 +1,347 @@
+package server.order;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import server.jfr.PaymentEvent;
+import third_party.FinanceService;
+import third_party.Payment;
+
+/**
+ * Makes the payments of placed orders with the FinanceService, in batches,
+ * off the path of {@code placeOrder}.
+ * <p>
+ * Orders wait in a bounded queue, so a burst of orders makes
+ * {@link #submit(OrderInstance)} wait for room. A fixed number of workers
+ * take what is queued, wait a short window for more to share the call
+ * with, and send them all in one call. The order id is the idempotency key
+ * of its payment, so a batch that fails with a {@link RemoteException} is
+ * simply sent again, with a growing backoff, until the FinanceService
+ * answers; the same holds for the payments a new primary sends again after
+ * a failover. Once the result of a payment is back, the listener is told.
+ * An order whose payment could not be settled, because the call or the
+ * listener failed unexpectedly, is queued once more on its own, so that
+ * the rest of its batch is settled as usual.
+ */
+public class PaymentProcessor {
+  static final long INITIAL_BACKOFF_MILLIS = 50;
+  static final long MAX_BACKOFF_MILLIS = 5000;
+  // how often the payment of an order is settled before it is left
+  // PAYMENT_PENDING for the OrderService to resume
+  static final int MAX_SETTLE_ATTEMPTS = 3;
+  private final Logger logger;
+  private final FinanceService financeService;
+  private final BlockingQueue<Pending> queue;
+  private final int maxBatchSize;
+  private final long windowMillis;
+  private final Listener listener;
+  private final List<Thread> workers;
+  private final LongAdder batches;
+  private final LongAdder paid;
+  private final LongAdder declined;
+  private final LongAdder paymentNanos;
+  private final AtomicLong maxPaymentNanos;
+  private final LongAdder retries;
+
+  /**
+   * @param financeService the FinanceService to make the payments with
+   * @param queueSize      maximum number of orders waiting for payment
+   * @param maxBatchSize   maximum number of payments sent in one call
+   * @param windowMillis   how long a payment waits for others to be sent
+   *                       along with it
+   * @param parallelism    number of calls that run at the same time
+   * @param listener       told about the result of every payment
+   */
+  public PaymentProcessor(FinanceService financeService, int queueSize,
+                          int maxBatchSize, long windowMillis,
+                          int parallelism, Listener listener) {
+    this.logger = Logger.getLogger(PaymentProcessor.class.getName());
+    this.financeService = financeService;
+    this.queue = new ArrayBlockingQueue<>(queueSize);
+    this.maxBatchSize = maxBatchSize;
+    this.windowMillis = windowMillis;
+    this.listener = listener;
+    this.batches = new LongAdder();
+    this.paid = new LongAdder();
+    this.declined = new LongAdder();
+    this.paymentNanos = new LongAdder();
+    this.maxPaymentNanos = new AtomicLong();
+    this.retries = new LongAdder();
+    this.workers = new ArrayList<>();
+    for (int i = 0; i < parallelism; i++) {
+      Thread worker = new Thread(this::pay, "payment-processor-" + i);
+      worker.setDaemon(true);
+      worker.start();
+      workers.add(worker);
+    }
+  }
+
+  /**
+   * Queue the payment of an order, waiting for room if the queue is full.
+   *
+   * @param order the order, which is PAYMENT_PENDING
+   * @throws InterruptedException
+   */
+  public void submit(OrderInstance order) throws InterruptedException {
+    queue.put(new Pending(order, System.nanoTime()));
+  }
+
+  /**
+   * The loop of a worker: gather a batch, pay it and report the results.
+   */
+  private void pay() {
+    List<Pending> batch = new ArrayList<>();
+    while (true) {
+      try {
+        batch.add(queue.take());
+        gather(batch);
+        Map<String, Boolean> results;
+        try {
+          results = pay(batch);
+        } catch (RuntimeException e) {
+          for (Pending pending : batch) {
+            requeue(pending, e);
+          }
+          continue;
+        }
+        long now = System.nanoTime();
+        for (Pending pending : batch) {
+          // a payment without a result was not made
+          boolean isPaid = Boolean.TRUE.equals(
+                  results.get(pending.order.getOrderID()));
+          try {
+            listener.paymentSettled(pending.order, isPaid);
+          } catch (RuntimeException e) {
+            requeue(pending, e);
+            continue;
+          }
+          (isPaid ? paid : declined).increment();
+          long nanos = now - pending.queuedAt;
+          paymentNanos.add(nanos);
+          maxPaymentNanos.accumulateAndGet(nanos, Math::max);
+        }
+        batches.increment();
+      } catch (InterruptedException e) {
+        return;
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+
+  /**
+   * Queue an order whose payment could not be settled once more. Its
+   * payment is sent again, which the FinanceService answers with the result
+   * of the first one. Once the attempts are used up, or if the queue is
+   * full, the order is left PAYMENT_PENDING until the OrderService resumes
+   * its payment.
+   *
+   * @param pending the order
+   * @param failure what settling it failed with
+   */
+  private void requeue(Pending pending, RuntimeException failure) {
+    if (++pending.attempts < MAX_SETTLE_ATTEMPTS && queue.offer(pending)) {
+      this.logger.log(Level.WARNING, System.currentTimeMillis() +
+              ": Payment of order " + pending.order.getOrderID() +
+              " could not be settled, queued it again. Refer: " + failure);
+      return;
+    }
+    this.logger.log(Level.SEVERE, System.currentTimeMillis() +
+            ": Payment of order " + pending.order.getOrderID() + " could " +
+            "not be settled, it stays pending. Refer: " + failure);
+  }
+
+  /**
+   * Add what else is queued to the batch, waiting up to the window for it
+   * to fill up.
+   */
+  private void gather(List<Pending> batch) throws InterruptedException {
+    long deadline = System.nanoTime() +
+            TimeUnit.MILLISECONDS.toNanos(windowMillis);
+    while (batch.size() < maxBatchSize) {
+      queue.drainTo(batch, maxBatchSize - batch.size());
+      long remaining = deadline - System.nanoTime();
+      if (batch.size() >= maxBatchSize || remaining <= 0) {
+        return;
+      }
+      Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+      if (next == null) {
+        return;
+      }
+      batch.add(next);
+    }
+  }
+
+  /**
+   * Send the payments until the FinanceService answers.
+   *
+   * @return whether each payment was made, by order id
+   * @throws InterruptedException
+   */
+  private Map<String, Boolean> pay(List<Pending> batch)
+          throws InterruptedException {
+    List<Payment> payments = new ArrayList<>(batch.size());
+    double amount = 0;
+    for (Pending pending : batch) {
+      OrderInstance order = pending.order;
+      payments.add(new Payment(order.getOrderID(), order.name,
+              order.getUserContact(), order.getAmount()));
+      amount += order.getAmount();
+    }
+    PaymentEvent event = new PaymentEvent();
+    event.begin();
+    event.payments = payments.size();
+    event.amount = amount;
+    try {
+      long backoff = INITIAL_BACKOFF_MILLIS;
+      for (int attempt = 1; ; attempt++) {
+        event.attempts = attempt;
+        try {
+          Map<String, Boolean> results =
+                  financeService.makePayments(payments);
+          if (event.shouldCommit()) {
+            for (Boolean result : results.values()) {
+              event.paid += Boolean.TRUE.equals(result) ? 1 : 0;
+            }
+          }
+          return results;
+        } catch (RemoteException e) {
+          retries.increment();
+          this.logger.log(Level.WARNING, System.currentTimeMillis() +
+                  ": Payments failed, retrying in " + backoff +
+                  "ms. Refer: " + e);
+          TimeUnit.MILLISECONDS.sleep(backoff);
+          backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+        }
+      }
+    } finally {
+      event.commit();
+    }
+  }
+
+  /**
+   * Stop the workers. Payments still queued are not sent; the orders stay
+   * PAYMENT_PENDING and are paid once the OrderService resumes them.
+   *
+   * @throws InterruptedException
+   */
+  public void stop() throws InterruptedException {
+    for (Thread worker : workers) {
+      worker.interrupt();
+    }
+    for (Thread worker : workers) {
+      worker.join();
+    }
+  }
+
+  /**
+   * @return number of orders waiting for their payment to be sent
+   */
+  public int getQueueDepth() {
+    return queue.size();
+  }
+
+  /**
+   * @return number of calls to the FinanceService that got an answer
+   */
+  public long getBatchCount() {
+    return batches.sum();
+  }
+
+  /**
+   * @return average number of payments sent in one call
+   */
+  public double getAverageBatchSize() {
+    long count = batches.sum();
+    return count == 0 ? 0 : (double) (paid.sum() + declined.sum()) / count;
+  }
+
+  /**
+   * @return number of payments made
+   */
+  public long getPaidCount() {
+    return paid.sum();
+  }
+
+  /**
+   * @return number of payments declined
+   */
+  public long getDeclinedCount() {
+    return declined.sum();
+  }
+
+  /**
+   * @return average time from queueing a payment until its result was
+   * back, in milliseconds
+   */
+  public double getAveragePaymentMillis() {
+    long count = paid.sum() + declined.sum();
+    return count == 0 ? 0 : paymentNanos.sum() / 1e6 / count;
+  }
+
+  /**
+   * @return longest time from queueing a payment until its result was
+   * back, in milliseconds
+   */
+  public double getMaxPaymentMillis() {
+    return maxPaymentNanos.get() / 1e6;
+  }
+
+  /**
+   * @return number of calls to the FinanceService that were retried
+   */
+  public long getRetryCount() {
+    return retries.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "PaymentProcessor{" +
+            "queueDepth=" + getQueueDepth() +
+            ", batches=" + getBatchCount() +
+            ", averageBatchSize=" + getAverageBatchSize() +
+            ", paid=" + getPaidCount() +
+            ", declined=" + getDeclinedCount() +
+            ", averagePaymentMillis=" + getAveragePaymentMillis() +
+            ", maxPaymentMillis=" + getMaxPaymentMillis() +
+            ", retries=" + getRetryCount() +
+            '}';
+  }
+
+  /**
+   * Told about the result of every payment.
+   */
+  public interface Listener {
+    /**
+     * @param order the order whose payment is settled
+     * @param paid  true if the payment was made, false if it was declined
+     * @throws InterruptedException
+     */
+    void paymentSettled(OrderInstance order, boolean paid)
+            throws InterruptedException;
+  }
+
+  /**
+   * An order waiting for payment, with the time it was queued at and how
+   * often settling its payment failed.
+   */
+  private static class Pending {
+    final OrderInstance order;
+    final long queuedAt;
+    int attempts;
+
+    Pending(OrderInstance order, long queuedAt) {
+      this.order = order;
+      this.queuedAt = queuedAt;
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package server.order;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+ * Interface through which a secondary OrderService registers with the
+ * primary to have the order events streamed to it, and through which a
+ * secondary that took over fences the former primary.
+ * <p>
+ * Every primary has a term, which a secondary raises above any term it
+ * knows of when it takes over. An OrderService never acts as the primary
+ * for a term older than the latest one it was told of.
+ */
+public interface ReplicationService extends Remote {
+
+  /**
+   * Register a replica. The primary streams every event after
+   * {@code lastSequence} to it, or first sends a snapshot if those events
+   * are not retained anymore or the replica was fed by another primary.
+   * Registering again replaces the previous registration.
+   *
+   * @param replica      the replica to stream the events to
+   * @param epoch        epoch of the primary the replica was last fed by
+   * @param lastSequence sequence number of the last event the replica has
+   *                     applied, 0 if none
+   * @throws RemoteException
+   */
+  void registerReplica(OrderReplica replica, long epoch, long lastSequence)
+          throws RemoteException;
+
+  /**
+   * @return the term of the latest primary this OrderService knows of, its
+   * own if it is the primary
+   * @throws RemoteException
+   */
+  long currentTerm() throws RemoteException;
+
+  /**
+   * Stop acting as the primary for a primary of a later term, e.g. the
+   * secondary that took over while this one was down, and follow it
+   * instead. The term is saved.
+   *
+   * @param term      term of the new primary
+   * @param successor the new primary
+   * @return the term of this OrderService afterwards, which is later than
+   * the given one if the new primary is outdated itself
+   * @throws RemoteException
+   */
+  long stepDown(long term, ReplicationService successor)
+          throws RemoteException;
+}
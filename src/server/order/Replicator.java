@@ -0,0 +1,185 @@
+package server.order;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Streams the order events of the primary OrderService to the registered
+ * replicas.
+ * <p>
+ * Every published event gets the next sequence number and is kept in a
+ * bounded backlog. Each replica has its own sender thread that ships the
+ * events after the last sequence number the replica acknowledged, in
+ * batches, and sends an empty batch as a heartbeat when there is nothing
+ * new. A replica that registers with a sequence number that is no longer in
+ * the backlog, or that was fed by another primary (different epoch), is
+ * first sent a snapshot of the order data.
+ */
+public class Replicator {
+  static final int BACKLOG_SIZE = 10000;
+  static final int MAX_BATCH_SIZE = 256;
+  static final long HEARTBEAT_MILLIS = 200;
+  private final Logger logger;
+  // identifies this primary, sequence numbers are only valid within it
+  private final long epoch;
+  private final OrderEvent[] backlog;
+  private final ConcurrentHashMap<String, OrderInstance> orderData;
+  private final ConcurrentHashMap<OrderReplica, ReplicaLink> links;
+  // sequence number of the last published event, they start from 1
+  private long sequence = 0;
+
+  /**
+   * @param orderData the order data snapshots are taken from
+   */
+  public Replicator(ConcurrentHashMap<String, OrderInstance> orderData) {
+    this.logger = Logger.getLogger(Replicator.class.getName());
+    this.epoch = System.currentTimeMillis();
+    this.backlog = new OrderEvent[BACKLOG_SIZE];
+    this.orderData = orderData;
+    this.links = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Publish an event to the replicas. The event must already have been
+   * applied to the order data; events of the same order must be published
+   * in the order they were applied.
+   *
+   * @param event the event to be published
+   * @return the event with its sequence number
+   */
+  public synchronized OrderEvent publish(OrderEvent event) {
+    OrderEvent sequenced = event.sequenced(++sequence);
+    backlog[(int) (sequence % BACKLOG_SIZE)] = sequenced;
+    notifyAll();
+    return sequenced;
+  }
+
+  /**
+   * Get the events after the given sequence number, waiting for up to the
+   * given time if there are none yet.
+   *
+   * @param after     sequence number after which the events are needed
+   * @param maxEvents maximum number of events to be returned
+   * @param waitMs    time to wait for new events
+   * @return the events, possibly none, or null if they are not in the
+   * backlog anymore
+   * @throws InterruptedException
+   */
+  synchronized List<OrderEvent> eventsAfter(long after, int maxEvents,
+                                            long waitMs)
+          throws InterruptedException {
+    if (sequence <= after) {
+      wait(waitMs);
+    }
+    if (after < sequence - BACKLOG_SIZE) {
+      return null;
+    }
+    List<OrderEvent> events = new ArrayList<>();
+    for (long s = after + 1; s <= sequence && events.size() < maxEvents;
+         s++) {
+      events.add(backlog[(int) (s % BACKLOG_SIZE)]);
+    }
+    return events;
+  }
+
+  private synchronized long lastSequence() {
+    return sequence;
+  }
+
+  /**
+   * Register a replica and start streaming the events to it.
+   *
+   * @param replica      the replica
+   * @param epoch        epoch of the primary the replica was last fed by
+   * @param lastSequence sequence number of the last event it has applied
+   */
+  public void register(OrderReplica replica, long epoch, long lastSequence) {
+    ReplicaLink link = new ReplicaLink(replica,
+            epoch == this.epoch ? lastSequence : 0, epoch != this.epoch);
+    ReplicaLink previous = links.put(replica, link);
+    if (previous != null) {
+      previous.stop();
+    }
+    link.start();
+    this.logger.log(Level.INFO, System.currentTimeMillis() +
+            ": Replica registered, streaming events after " + lastSequence +
+            ".");
+  }
+
+  /**
+   * Stop streaming to every replica, e.g. once this is not the primary
+   * anymore.
+   */
+  public void stopAll() {
+    for (ReplicaLink link : links.values()) {
+      links.remove(link.replica, link);
+      link.stop();
+    }
+  }
+
+  /**
+   * The sender thread of a single replica.
+   */
+  class ReplicaLink implements Runnable {
+    private final OrderReplica replica;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private long acked;
+    private boolean needsSnapshot;
+
+    ReplicaLink(OrderReplica replica, long acked, boolean needsSnapshot) {
+      this.replica = replica;
+      this.acked = acked;
+      this.needsSnapshot = needsSnapshot;
+      this.thread = new Thread(this, "replica-link");
+      this.thread.setDaemon(true);
+    }
+
+    void start() {
+      thread.start();
+    }
+
+    void stop() {
+      running = false;
+      thread.interrupt();
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (running) {
+          if (needsSnapshot) {
+            // events applied after this sequence number may be part of the
+            // snapshot too, replaying them on top of it is harmless
+            long snapshotSequence = lastSequence();
+            acked = replica.installSnapshot(epoch, snapshotSequence,
+                    new ConcurrentHashMap<>(orderData));
+            needsSnapshot = false;
+            continue;
+          }
+          List<OrderEvent> events = eventsAfter(acked, MAX_BATCH_SIZE,
+                  HEARTBEAT_MILLIS);
+          if (events == null) {
+            needsSnapshot = true;
+            continue;
+          }
+          acked = replica.replicate(epoch, events);
+          if (acked < 0) {
+            needsSnapshot = true;
+          }
+        }
+      } catch (RemoteException e) {
+        // the replica registers again once it is reachable
+        links.remove(replica, this);
+        logger.log(Level.WARNING, System.currentTimeMillis() +
+                ": Lost the replica, stopped streaming to it. Refer: " + e);
+      } catch (InterruptedException e) {
+        // stopped
+      }
+    }
+  }
+}
@@ -14,10 +14,47 @@ public class Constants {
   public static final String ORDER_SERVICE_NAME = "OrderService";
   public static final String FAILURE_MESSAGE = "FAILED";
   public static final String EXIT = "EXIT";
-  public static final String ORDER_SEC_SVC_PROP_FILE = "/Users/anshulrao" +
-          "/IdeaProjects/FinalProject/secondary-order-service.properties";
-  public static final String ORDER_ARCHIVE_DIR = "/Users/anshulrao" +
-          "/IdeaProjects/FinalProject/data/";
+  // both can be overridden, e.g. to run several OrderServices on one host
+  public static final String ORDER_SEC_SVC_PROP_FILE = System.getProperty(
+          "order.secondaries.file", "/Users/anshulrao/IdeaProjects" +
+                  "/FinalProject/secondary-order-service.properties");
+  public static final String ORDER_ARCHIVE_DIR = System.getProperty(
+          "order.archive.dir", "/Users/anshulrao" +
+                  "/IdeaProjects/FinalProject/data/");
+  // least number of journaled order events after which a checkpoint is
+  // taken, more when the day has more orders than that
+  public static final int ORDER_CHECKPOINT_INTERVAL = 500;
+  // how long journaled order events wait for others to share an fsync with
+  public static final long ORDER_COMMIT_WINDOW_MICROS = 1000;
+  // number of journaled order events that are forced to disk at most at once
+  public static final int ORDER_COMMIT_MAX_BATCH_SIZE = 256;
+  // how long the OrderService remembers the request that placed an order,
+  // so that the same request sent again does not place another one
+  public static final long ORDER_REQUEST_WINDOW_MILLIS = 10 * 60 * 1000;
+  // number of orders that may wait for their payment to be sent
+  public static final int ORDER_PAYMENT_QUEUE_SIZE = 1024;
+  // how long a payment waits for others to share a call to the
+  // FinanceService with
+  public static final long ORDER_PAYMENT_WINDOW_MILLIS = 5;
+  // number of payments sent to the FinanceService at most at once
+  public static final int ORDER_PAYMENT_MAX_BATCH_SIZE = 128;
+  // number of calls to the FinanceService that may run at the same time
+  public static final int ORDER_PAYMENT_PARALLELISM = 2;
+  // how long a call of the stand-in FinanceService takes, e.g. to see how
+  // the OrderService copes with a slow payment provider
+  public static final long FINANCE_LATENCY_MILLIS =
+          Long.getLong("finance.latency.millis", 0);
+  // number of placed orders that may wait for hand-off to the kitchen
+  public static final int KITCHEN_DISPATCH_QUEUE_SIZE = 1024;
+  // number of hand-offs to the kitchen that may run at the same time
+  public static final int KITCHEN_DISPATCH_PARALLELISM = 4;
+  // how long the kitchen remembers an order after it has been delivered
+  public static final long KITCHEN_COMPLETED_ORDER_TTL_MILLIS = 60 * 60 * 1000;
+  // how far back the time orders spend per stage in the kitchen is shown
+  public static final long KITCHEN_STAGE_WINDOW_MILLIS = 60 * 1000;
+  // number of log entries that may wait to be written, more are dropped
+  // unless they are warnings or errors
+  public static final int LOG_RING_SIZE = 8192;
 
   private static Map<String, Integer> initInventoryPriceMap() {
     return Map.of(
@@ -0,0 +1,88 @@
+package shared.logging;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static shared.Constants.LOG_RING_SIZE;
+
+/**
+ * A logger for the hot paths of the services: the caller only checks the
+ * level and puts the format and its arguments into a ring of preallocated
+ * slots, see {@link LogRing}. Building the message and writing it happens
+ * on a background thread, through the {@code java.util.logging} logger of
+ * the same name, so levels, handlers and the configuration stay as they
+ * are; the message is prefixed with the time it was logged at, as
+ * everywhere else.
+ * <p>
+ * Arguments replace the {@code {}} in the format in order. They are turned
+ * into strings when the entry is written, so they should not change after
+ * they are logged. A disabled level costs a level check and allocates
+ * nothing, but primitive arguments are boxed by the caller before that, so
+ * guard such calls with {@link #isLoggable(Level)}. When the ring is full,
+ * entries below {@code WARNING} are dropped and counted rather than making
+ * the caller wait; warnings and errors are then written by the caller.
+ */
+public final class AsyncLogger {
+  private static final LogRing RING = new LogRing(LOG_RING_SIZE);
+  private final Logger logger;
+
+  private AsyncLogger(Logger logger) {
+    this.logger = logger;
+  }
+
+  /**
+   * @param name name of the logger, usually that of the class
+   * @return a logger writing through the {@code java.util.logging} logger
+   * of that name
+   */
+  public static AsyncLogger getLogger(String name) {
+    return new AsyncLogger(Logger.getLogger(name));
+  }
+
+  public boolean isLoggable(Level level) {
+    return logger.isLoggable(level);
+  }
+
+  public void log(Level level, String message) {
+    if (logger.isLoggable(level)) {
+      RING.publish(logger, level, message, 0, null, null, null);
+    }
+  }
+
+  public void log(Level level, String format, Object arg) {
+    if (logger.isLoggable(level)) {
+      RING.publish(logger, level, format, 1, arg, null, null);
+    }
+  }
+
+  public void log(Level level, String format, Object arg0, Object arg1) {
+    if (logger.isLoggable(level)) {
+      RING.publish(logger, level, format, 2, arg0, arg1, null);
+    }
+  }
+
+  public void log(Level level, String format, Object arg0, Object arg1,
+                  Object arg2) {
+    if (logger.isLoggable(level)) {
+      RING.publish(logger, level, format, 3, arg0, arg1, arg2);
+    }
+  }
+
+  /**
+   * Wait until everything logged so far is written, e.g. before exiting.
+   *
+   * @param timeoutMillis maximum time to wait in milliseconds
+   * @return false if it was not written in time
+   */
+  public static boolean flush(long timeoutMillis) {
+    return RING.flush(timeoutMillis);
+  }
+
+  /**
+   * @return number of entries below {@code WARNING} dropped because the
+   * ring was full
+   */
+  public static long getDroppedCount() {
+    return RING.getDroppedCount();
+  }
+}
@@ -0,0 +1,233 @@
+package shared.logging;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * The log entries of all {@link AsyncLogger}s, waiting in a ring of
+ * preallocated slots for a writer thread to hand them to
+ * {@code java.util.logging}.
+ * <p>
+ * A logging thread claims the next slot by compare-and-set on the tail,
+ * fills it in and publishes it by writing its sequence number; the writer
+ * takes the slots in order, copies them out and moves the head on, which
+ * frees them. If the tail is a whole ring ahead of the head, an entry below
+ * {@code WARNING} is dropped and counted instead of waiting, while a
+ * warning or an error is written by the logging thread itself, ahead of
+ * the entries still in the ring, so that it is never lost. The writer spins briefly and
+ * then parks for a growing time while there is nothing to write, so the
+ * logging threads never have to wake it.
+ */
+final class LogRing {
+  static final int SPINS = 100;
+  static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+  static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+  // dropped entries are reported when idle and every 1024 entries written
+  static final int REPORT_INTERVAL_MASK = 1023;
+  private final Entry[] entries;
+  private final int mask;
+  // sequence number of the next slot to be claimed
+  private final AtomicLong tail;
+  // sequence number of the next slot to be written, only the writer moves it
+  private volatile long head;
+  private final LongAdder dropped;
+  // dropped entries the writer has reported so far
+  private long droppedReported;
+
+  /**
+   * @param size number of slots, rounded up to a power of two
+   */
+  LogRing(int size) {
+    int slots = Integer.highestOneBit(Math.max(size - 1, 1)) << 1;
+    this.entries = new Entry[slots];
+    for (int i = 0; i < slots; i++) {
+      entries[i] = new Entry();
+    }
+    this.mask = slots - 1;
+    this.tail = new AtomicLong();
+    this.dropped = new LongAdder();
+    Thread writer = new Thread(this::drain, "log-writer");
+    writer.setDaemon(true);
+    writer.start();
+    Runtime.getRuntime().addShutdownHook(new Thread(() ->
+            flush(TimeUnit.SECONDS.toMillis(1)), "log-flush"));
+  }
+
+  /**
+   * Put an entry into the ring. If the ring is full, a warning or an error
+   * is written right away and anything else is dropped.
+   *
+   * @return false if it was dropped
+   */
+  boolean publish(Logger logger, Level level, String format, int argCount,
+                  Object arg0, Object arg1, Object arg2) {
+    long sequence;
+    do {
+      sequence = tail.get();
+      if (sequence - head >= entries.length) {
+        if (level.intValue() >= Level.WARNING.intValue()) {
+          Entry entry = new Entry();
+          entry.fill(logger, level, format, argCount, arg0, arg1, arg2);
+          write(logger, entry.toRecord());
+          return true;
+        }
+        dropped.increment();
+        return false;
+      }
+    } while (!tail.compareAndSet(sequence, sequence + 1));
+    Entry entry = entries[(int) (sequence & mask)];
+    entry.fill(logger, level, format, argCount, arg0, arg1, arg2);
+    // 0 is what an unused slot holds
+    entry.published = sequence + 1;
+    return true;
+  }
+
+  /**
+   * The loop of the writer.
+   */
+  private void drain() {
+    int spins = 0;
+    long parkNanos = MIN_PARK_NANOS;
+    while (true) {
+      long sequence = head;
+      Entry entry = entries[(int) (sequence & mask)];
+      if (entry.published != sequence + 1) {
+        reportDropped();
+        if (++spins < SPINS) {
+          Thread.onSpinWait();
+        } else {
+          LockSupport.parkNanos(parkNanos);
+          parkNanos = Math.min(parkNanos * 2, MAX_PARK_NANOS);
+        }
+        continue;
+      }
+      spins = 0;
+      parkNanos = MIN_PARK_NANOS;
+      if ((sequence & REPORT_INTERVAL_MASK) == 0) {
+        // under overload the writer is never idle
+        reportDropped();
+      }
+      Logger logger = entry.logger;
+      LogRecord record = entry.toRecord();
+      entry.clear();
+      head = sequence + 1;
+      write(logger, record);
+    }
+  }
+
+  private static void write(Logger logger, LogRecord record) {
+    try {
+      logger.log(record);
+    } catch (RuntimeException e) {
+      // a failing handler must not stop the writer, nor fail the caller
+    }
+  }
+
+  private void reportDropped() {
+    long total = dropped.sum();
+    if (total > droppedReported) {
+      Logger.getLogger(LogRing.class.getName()).log(Level.WARNING,
+              System.currentTimeMillis() + ": " + (total - droppedReported) +
+                      " log records were dropped, the log writer could not " +
+                      "keep up.");
+      droppedReported = total;
+    }
+  }
+
+  /**
+   * Wait until the entries put into the ring so far are written.
+   *
+   * @param timeoutMillis maximum time to wait in milliseconds
+   * @return false if they were not written in time
+   */
+  boolean flush(long timeoutMillis) {
+    long target = tail.get();
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    while (head < target) {
+      if (System.currentTimeMillis() > deadline) {
+        return false;
+      }
+      LockSupport.parkNanos(MIN_PARK_NANOS);
+    }
+    return true;
+  }
+
+  long getDroppedCount() {
+    return dropped.sum();
+  }
+
+  /**
+   * A slot of the ring. The fields are written by the thread that claimed
+   * it and read by the writer after it saw {@code published}.
+   */
+  private static final class Entry {
+    volatile long published;
+    Logger logger;
+    Level level;
+    String format;
+    int argCount;
+    Object arg0;
+    Object arg1;
+    Object arg2;
+    long millis;
+    long threadID;
+
+    void fill(Logger logger, Level level, String format, int argCount,
+              Object arg0, Object arg1, Object arg2) {
+      this.logger = logger;
+      this.level = level;
+      this.format = format;
+      this.argCount = argCount;
+      this.arg0 = arg0;
+      this.arg1 = arg1;
+      this.arg2 = arg2;
+      this.millis = System.currentTimeMillis();
+      this.threadID = Thread.currentThread().getId();
+    }
+
+    LogRecord toRecord() {
+      LogRecord record = new LogRecord(level, millis + ": " + format());
+      record.setLoggerName(logger.getName());
+      record.setInstant(Instant.ofEpochMilli(millis));
+      record.setLongThreadID(threadID);
+      // the caller cannot be inferred on this thread
+      record.setSourceClassName(logger.getName());
+      return record;
+    }
+
+    /**
+     * @return the format with each {@code {}} replaced by the next argument
+     */
+    private String format() {
+      if (argCount == 0) {
+        return format;
+      }
+      StringBuilder sb = new StringBuilder(format.length() + 32);
+      int from = 0;
+      for (int i = 0; i < argCount; i++) {
+        int at = format.indexOf("{}", from);
+        if (at < 0) {
+          break;
+        }
+        sb.append(format, from, at);
+        sb.append(i == 0 ? arg0 : i == 1 ? arg1 : arg2);
+        from = at + 2;
+      }
+      return sb.append(format, from, format.length()).toString();
+    }
+
+    void clear() {
+      logger = null;
+      format = null;
+      arg0 = null;
+      arg1 = null;
+      arg2 = null;
+    }
+  }
+}
@@ -0,0 +1,134 @@
+package shared.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies in nanoseconds, counted in log-linear buckets: every power of
+ * two is split into 32 buckets, so a percentile is off by at most about
+ * 3%. Recording is lock-free and the size is fixed however many latencies
+ * are recorded. The count is the sum of the buckets, so recording touches
+ * only the bucket, the sum and, rarely, the maximum.
+ */
+public class LatencyHistogram {
+  // values below this are counted exactly
+  private static final int LINEAR = 64;
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int LINEAR_BITS = 6;
+  private static final int BUCKETS = LINEAR + (63 - LINEAR_BITS) * SUB_BUCKETS;
+  private final AtomicLongArray counts;
+  private final LongAdder sum;
+  private final AtomicLong max;
+
+  public LatencyHistogram() {
+    this.counts = new AtomicLongArray(BUCKETS);
+    this.sum = new LongAdder();
+    this.max = new AtomicLong();
+  }
+
+  static int bucket(long nanos) {
+    if (nanos < LINEAR) {
+      return (int) Math.max(nanos, 0);
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+    int mantissa = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) -
+            SUB_BUCKETS;
+    return LINEAR + (exponent - LINEAR_BITS) * SUB_BUCKETS + mantissa;
+  }
+
+  /**
+   * @return the highest value counted in the bucket
+   */
+  static long highestValue(int bucket) {
+    if (bucket < LINEAR) {
+      return bucket;
+    }
+    int exponent = (bucket - LINEAR) / SUB_BUCKETS + LINEAR_BITS;
+    long mantissa = (bucket - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+    return ((mantissa + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+  }
+
+  /**
+   * @param nanos the latency in nanoseconds
+   */
+  public void record(long nanos) {
+    counts.getAndIncrement(bucket(nanos));
+    sum.add(nanos);
+    if (nanos > max.get()) {
+      max.accumulateAndGet(nanos, Math::max);
+    }
+  }
+
+  public long getCount() {
+    long n = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      n += counts.get(i);
+    }
+    return n;
+  }
+
+  /**
+   * @return average latency in milliseconds
+   */
+  public double getMeanMillis() {
+    long n = getCount();
+    return n == 0 ? 0 : sum.sum() / 1e6 / n;
+  }
+
+  /**
+   * @return highest latency in milliseconds
+   */
+  public double getMaxMillis() {
+    return max.get() / 1e6;
+  }
+
+  /**
+   * @param percentile e.g. 99.9
+   * @return the latency in milliseconds that the given percentage of the
+   * recorded latencies do not exceed
+   */
+  public double getPercentileMillis(double percentile) {
+    long n = getCount();
+    if (n == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(percentile / 100 * n);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= Math.max(rank, 1)) {
+        return Math.min(highestValue(i), max.get()) / 1e6;
+      }
+    }
+    return max.get() / 1e6;
+  }
+
+  /**
+   * Add what another histogram has recorded to this one.
+   *
+   * @param other the histogram, which is not changed
+   */
+  void add(LatencyHistogram other) {
+    for (int i = 0; i < BUCKETS; i++) {
+      long count = other.counts.get(i);
+      if (count != 0) {
+        counts.getAndAdd(i, count);
+      }
+    }
+    sum.add(other.sum.sum());
+    max.accumulateAndGet(other.max.get(), Math::max);
+  }
+
+  /**
+   * Forget everything recorded so far, e.g. at the end of the warmup.
+   */
+  public void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts.set(i, 0);
+    }
+    sum.reset();
+    max.set(0);
+  }
+}
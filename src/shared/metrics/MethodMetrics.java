@@ -0,0 +1,106 @@
+package shared.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Calls of one method: the latency of every call, the calls that failed
+ * and the calls still running. Everything is recorded without locks. The
+ * calls still running are the calls started less the calls finished, both
+ * counted since creation, so that resetting the latencies does not change
+ * them.
+ */
+public class MethodMetrics implements MethodMetricsMBean {
+  private final LatencyHistogram latencies;
+  private final LongAdder errors;
+  private final LongAdder started;
+  private final LongAdder finished;
+  private volatile long since;
+
+  public MethodMetrics() {
+    this.latencies = new LatencyHistogram();
+    this.errors = new LongAdder();
+    this.started = new LongAdder();
+    this.finished = new LongAdder();
+    this.since = System.nanoTime();
+  }
+
+  /**
+   * Record that a call started.
+   *
+   * @return the start time to hand to {@link #finished}
+   */
+  public long started() {
+    started.increment();
+    return System.nanoTime();
+  }
+
+  /**
+   * Record that a call finished.
+   *
+   * @param start  what {@link #started()} returned
+   * @param failed whether the call threw
+   */
+  public void finished(long start, boolean failed) {
+    latencies.record(System.nanoTime() - start);
+    if (failed) {
+      errors.increment();
+    }
+    finished.increment();
+  }
+
+  @Override
+  public long getCount() {
+    return latencies.getCount();
+  }
+
+  @Override
+  public long getErrorCount() {
+    return errors.sum();
+  }
+
+  @Override
+  public long getInFlight() {
+    // a call is counted as finished after it was counted as started, so
+    // reading finished first never shows less than 0
+    long done = finished.sum();
+    return Math.max(started.sum() - done, 0);
+  }
+
+  @Override
+  public double getCallsPerSecond() {
+    double seconds = (System.nanoTime() - since) / 1e9;
+    return seconds <= 0 ? 0 : getCount() / seconds;
+  }
+
+  @Override
+  public double getMeanMillis() {
+    return latencies.getMeanMillis();
+  }
+
+  @Override
+  public double getP50Millis() {
+    return latencies.getPercentileMillis(50);
+  }
+
+  @Override
+  public double getP99Millis() {
+    return latencies.getPercentileMillis(99);
+  }
+
+  @Override
+  public double getP999Millis() {
+    return latencies.getPercentileMillis(99.9);
+  }
+
+  @Override
+  public double getMaxMillis() {
+    return latencies.getMaxMillis();
+  }
+
+  @Override
+  public void reset() {
+    latencies.reset();
+    errors.reset();
+    since = System.nanoTime();
+  }
+}
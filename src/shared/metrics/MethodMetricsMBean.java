@@ -0,0 +1,31 @@
+package shared.metrics;
+
+/**
+ * What JMX shows for a method, see {@link MethodMetrics}. Latencies are in
+ * milliseconds.
+ */
+public interface MethodMetricsMBean {
+  long getCount();
+
+  long getErrorCount();
+
+  long getInFlight();
+
+  double getCallsPerSecond();
+
+  double getMeanMillis();
+
+  double getP50Millis();
+
+  double getP99Millis();
+
+  double getP999Millis();
+
+  double getMaxMillis();
+
+  /**
+   * Start counting the calls, errors and latencies from zero again. The
+   * calls still running are not affected.
+   */
+  void reset();
+}
@@ -0,0 +1,68 @@
+package shared.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latencies of a recent window of time only, e.g. the last minute, so that
+ * the percentiles follow the load rather than the whole uptime. The window
+ * is made of a few slices, each a {@link LatencyHistogram} of its own; a
+ * latency goes into the slice of the current time, and the slice that
+ * comes round again is cleared by the first latency that falls into it.
+ * The window thus covers between the given length and one slice less.
+ * A latency recorded while its slice is being cleared may be lost.
+ */
+public class RollingHistogram {
+  private final long sliceMillis;
+  private final LatencyHistogram[] slices;
+  // number of the time slice each slice holds, i.e. its start time divided
+  // by sliceMillis
+  private final AtomicLongArray sliceNumbers;
+
+  /**
+   * @param windowMillis length of the window in milliseconds
+   * @param slices       number of slices the window is made of
+   */
+  public RollingHistogram(long windowMillis, int slices) {
+    this.sliceMillis = Math.max(1, windowMillis / slices);
+    this.slices = new LatencyHistogram[slices];
+    for (int i = 0; i < slices; i++) {
+      this.slices[i] = new LatencyHistogram();
+    }
+    this.sliceNumbers = new AtomicLongArray(slices);
+  }
+
+  /**
+   * @param nanos the latency in nanoseconds
+   */
+  public void record(long nanos) {
+    long number = System.currentTimeMillis() / sliceMillis;
+    int index = (int) (number % slices.length);
+    long held = sliceNumbers.get(index);
+    if (held != number && sliceNumbers.compareAndSet(index, held, number)) {
+      slices[index].reset();
+    }
+    slices[index].record(nanos);
+  }
+
+  /**
+   * @return the latencies of the window, merged into one histogram that no
+   * longer changes
+   */
+  public LatencyHistogram snapshot() {
+    long current = System.currentTimeMillis() / sliceMillis;
+    LatencyHistogram merged = new LatencyHistogram();
+    for (int i = 0; i < slices.length; i++) {
+      if (current - sliceNumbers.get(i) < slices.length) {
+        merged.add(slices[i]);
+      }
+    }
+    return merged;
+  }
+
+  /**
+   * @return length of the window in milliseconds
+   */
+  public long getWindowMillis() {
+    return sliceMillis * slices.length;
+  }
+}
@@ -0,0 +1,72 @@
+package shared.metrics;
+
+/**
+ * How long things spend in one stage of their way through a service, e.g.
+ * orders waiting for a chef, over a rolling window. Every attribute read
+ * merges the slices of the window anew, which costs a few microseconds and
+ * nothing while nobody is looking.
+ */
+public class StageMetrics implements StageMetricsMBean {
+  private final RollingHistogram latencies;
+
+  /**
+   * @param windowMillis length of the window in milliseconds
+   * @param slices       number of slices the window moves by
+   */
+  public StageMetrics(long windowMillis, int slices) {
+    this.latencies = new RollingHistogram(windowMillis, slices);
+  }
+
+  /**
+   * Record the time spent in the stage.
+   *
+   * @param fromMillis when the stage was entered
+   * @param toMillis   when it was left
+   */
+  public void record(long fromMillis, long toMillis) {
+    // the times may come from the clocks of different hosts
+    latencies.record(Math.max(toMillis - fromMillis, 0) * 1_000_000);
+  }
+
+  /**
+   * @return the latencies of the window as they are now
+   */
+  public LatencyHistogram snapshot() {
+    return latencies.snapshot();
+  }
+
+  @Override
+  public long getWindowSeconds() {
+    return latencies.getWindowMillis() / 1000;
+  }
+
+  @Override
+  public long getCount() {
+    return snapshot().getCount();
+  }
+
+  @Override
+  public double getMeanMillis() {
+    return snapshot().getMeanMillis();
+  }
+
+  @Override
+  public double getP50Millis() {
+    return snapshot().getPercentileMillis(50);
+  }
+
+  @Override
+  public double getP90Millis() {
+    return snapshot().getPercentileMillis(90);
+  }
+
+  @Override
+  public double getP99Millis() {
+    return snapshot().getPercentileMillis(99);
+  }
+
+  @Override
+  public double getMaxMillis() {
+    return snapshot().getMaxMillis();
+  }
+}
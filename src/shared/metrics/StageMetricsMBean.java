@@ -0,0 +1,21 @@
+package shared.metrics;
+
+/**
+ * What JMX shows for a stage, see {@link StageMetrics}. Everything is over
+ * the last window only; latencies are in milliseconds.
+ */
+public interface StageMetricsMBean {
+  long getWindowSeconds();
+
+  long getCount();
+
+  double getMeanMillis();
+
+  double getP50Millis();
+
+  double getP90Millis();
+
+  double getP99Millis();
+
+  double getMaxMillis();
+}
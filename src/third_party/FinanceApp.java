@@ -4,16 +4,20 @@ import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 
+import shared.metrics.Instrumentation;
+
+import static shared.Constants.FINANCE_LATENCY_MILLIS;
+
 public class FinanceApp {
   final int PORT = 4333;
 
   public FinanceApp() throws RemoteException {
-    System.setProperty("java.rmi.server.logCalls", "true");
     System.setProperty("java.rmi.server.hostname", "127.0.0.1");
     Registry registry = LocateRegistry.createRegistry(PORT);
     FinanceService financeService =
-            new FinanceServiceImpl();
-    registry.rebind("FinanceService", financeService);
+            new FinanceServiceImpl(FINANCE_LATENCY_MILLIS);
+    registry.rebind("FinanceService",
+            Instrumentation.instrument(financeService, "FinanceService"));
   }
 
   public static void main(String[] args) throws RemoteException {
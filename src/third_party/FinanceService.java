@@ -2,8 +2,21 @@ package third_party;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.List;
+import java.util.Map;
 
 public interface FinanceService extends Remote {
   boolean makePayment(String name, long contact, double amount)
           throws RemoteException;
+
+  /**
+   * Make a batch of payments in one call. A payment whose idempotency key
+   * was seen before is not charged again; its earlier result is returned.
+   *
+   * @param payments the payments
+   * @return whether each payment was made, by idempotency key
+   * @throws RemoteException
+   */
+  Map<String, Boolean> makePayments(List<Payment> payments)
+          throws RemoteException;
 }
@@ -2,12 +2,43 @@ package third_party;
 
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 public class FinanceServiceImpl extends UnicastRemoteObject
         implements FinanceService {
+  // number of idempotency keys remembered, the oldest are forgotten first
+  static final int MAX_REMEMBERED_PAYMENTS = 1_000_000;
+  private final long latencyMillis;
+  // result per idempotency key, guarded by itself
+  private final LinkedHashMap<String, Boolean> results;
+  private final LongAdder charged;
+  private final LongAdder duplicates;
 
   public FinanceServiceImpl() throws RemoteException {
+    this(0);
+  }
+
+  /**
+   * @param latencyMillis how long every call takes, to stand in for a
+   *                      remote payment provider
+   * @throws RemoteException
+   */
+  public FinanceServiceImpl(long latencyMillis) throws RemoteException {
     super();
+    this.latencyMillis = latencyMillis;
+    this.results = new LinkedHashMap<>() {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+        return size() > MAX_REMEMBERED_PAYMENTS;
+      }
+    };
+    this.charged = new LongAdder();
+    this.duplicates = new LongAdder();
   }
 
   /**
@@ -22,6 +53,64 @@ public class FinanceServiceImpl extends UnicastRemoteObject
   @Override
   public boolean makePayment(String name, long contact, double amount)
           throws RemoteException {
+    simulateLatency();
+    charged.increment();
     return true;
   }
+
+  /**
+   * Placeholder as well: every payment of a positive amount is made, and
+   * the whole batch takes as long as a single payment.
+   *
+   * @param payments the payments
+   * @return whether each payment was made, by idempotency key
+   * @throws RemoteException
+   */
+  @Override
+  public Map<String, Boolean> makePayments(List<Payment> payments)
+          throws RemoteException {
+    simulateLatency();
+    Map<String, Boolean> batch = new HashMap<>();
+    synchronized (results) {
+      for (Payment payment : payments) {
+        Boolean result = results.get(payment.getIdempotencyKey());
+        if (result != null) {
+          duplicates.increment();
+        } else {
+          result = payment.getAmount() > 0;
+          results.put(payment.getIdempotencyKey(), result);
+          if (result) {
+            charged.increment();
+          }
+        }
+        batch.put(payment.getIdempotencyKey(), result);
+      }
+    }
+    return batch;
+  }
+
+  private void simulateLatency() {
+    if (latencyMillis <= 0) {
+      return;
+    }
+    try {
+      TimeUnit.MILLISECONDS.sleep(latencyMillis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * @return number of payments charged
+   */
+  public long getChargedCount() {
+    return charged.sum();
+  }
+
+  /**
+   * @return number of payments sent again and not charged again
+   */
+  public long getDuplicateCount() {
+    return duplicates.sum();
+  }
 }
@@ -0,0 +1,48 @@
+package third_party;
+
+import java.io.Serializable;
+
+/**
+ * A payment to be made, identified by an idempotency key: a payment is
+ * charged once per key however often it is sent, e.g. again after a
+ * failover.
+ */
+public class Payment implements Serializable {
+  private static final long serialVersionUID = 1L;
+  final String idempotencyKey;
+  final String name;
+  final long contact;
+  final double amount;
+
+  public Payment(String idempotencyKey, String name, long contact,
+                 double amount) {
+    this.idempotencyKey = idempotencyKey;
+    this.name = name;
+    this.contact = contact;
+    this.amount = amount;
+  }
+
+  public String getIdempotencyKey() {
+    return idempotencyKey;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public long getContact() {
+    return contact;
+  }
+
+  public double getAmount() {
+    return amount;
+  }
+
+  @Override
+  public String toString() {
+    return "Payment{" +
+            "idempotencyKey='" + idempotencyKey + '\'' +
+            ", amount=" + amount +
+            '}';
+  }
+}
@@ -0,0 +1,86 @@
+package server.order;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A restart on the day after the journal was last written: what the journal
+ * held after the last checkpoint of that day must be archived, and the
+ * orders that are not done must carry over into the new day.
+ * <p>
+ * Run with {@code java server.order.OrderJournalRestartTest}; it fails
+ * with an {@link AssertionError} if not.
+ */
+public class OrderJournalRestartTest {
+  static final String DAY = "20200101";
+  // checkpoints after 2 events, so that the last orders are only journaled
+  static final int CHECKPOINT_INTERVAL = 2;
+  static final int ORDERS = 5;
+
+  public static void main(String[] args) throws Exception {
+    String archiveDir = Files.createTempDirectory("order-archive").toFile()
+            .getPath() + File.separator;
+    OrderStatus[] statuses = {OrderStatus.COMPLETE, OrderStatus.COMPLETE,
+            OrderStatus.PAYMENT_FAILED, OrderStatus.PAYMENT_PENDING,
+            OrderStatus.PLACED};
+
+    OrderJournal journal = journal(archiveDir, LocalDate.of(2020, 1, 1));
+    Map<String, OrderInstance> orderData = journal.recover();
+    for (int i = 0; i < ORDERS; i++) {
+      OrderInstance order = new OrderInstance(OrderInstance.orderID(DAY,
+              i + 1), 10, "client-" + i, i, items(), statuses[i]);
+      orderData.put(order.getOrderID(), order);
+      journal.append(OrderEvent.placed(order)).get();
+    }
+    // stopped without rolling over
+    journal.close();
+
+    journal = journal(archiveDir, LocalDate.of(2020, 1, 2));
+    orderData = journal.recover();
+    for (int i = 0; i < ORDERS; i++) {
+      String orderID = OrderInstance.orderID(DAY, i + 1);
+      OrderInstance archived = journal.findArchived(orderID);
+      check(archived != null, orderID + " is archived");
+      check(archived.getOrderStatus() == statuses[i],
+              orderID + " is archived as " + statuses[i]);
+      boolean done = statuses[i] == OrderStatus.COMPLETE ||
+              statuses[i] == OrderStatus.PAYMENT_FAILED;
+      check(orderData.containsKey(orderID) != done, orderID +
+              (done ? " stays in the archive" : " carries over"));
+    }
+    journal.close();
+
+    // once more, the orders that carried over are in the checkpoint of the
+    // new day and the journal of the old one is not replayed again
+    check(!journal.journalFile(DAY).exists(), "old journal is deleted");
+    journal = journal(archiveDir, LocalDate.of(2020, 1, 2));
+    orderData = journal.recover();
+    check(orderData.size() == 2, "2 orders carried over, not " +
+            orderData.size());
+    journal.close();
+    System.out.println("OK");
+  }
+
+  private static OrderJournal journal(String archiveDir, LocalDate day) {
+    Clock clock = Clock.fixed(day.atStartOfDay(ZoneId.systemDefault())
+            .toInstant(), ZoneId.systemDefault());
+    return new OrderJournal(archiveDir, CHECKPOINT_INTERVAL, 0, 256, clock);
+  }
+
+  private static HashMap<String, Integer> items() {
+    HashMap<String, Integer> items = new HashMap<>();
+    items.put("Burger", 1);
+    return items;
+  }
+
+  private static void check(boolean condition, String expectation) {
+    if (!condition) {
+      throw new AssertionError("Expected: " + expectation);
+    }
+  }
+}